@@ -1,43 +1,39 @@
 package org.shawn.games.Serendipity.Chess;
 
+// Pieces are packed as piece << 6 | square, so that a diff can be refilled
+// for every move without allocating
 public class AccumulatorDiff
 {
-	public class DiffInfo
-	{
-		public final Piece piece;
-		public final Square square;
-
-		public DiffInfo(Piece piece, Square square)
-		{
-			this.piece = piece;
-			this.square = square;
-		}
-	}
-
 	private int addedCount;
-	private DiffInfo[] added;
+	private final int[] added;
 
 	private int removedCount;
-	private DiffInfo[] removed;
+	private final int[] removed;
 
 	public AccumulatorDiff()
 	{
 		this.addedCount = 0;
-		this.added = new DiffInfo[2];
+		this.added = new int[2];
 
 		this.removedCount = 0;
-		this.removed = new DiffInfo[2];
+		this.removed = new int[2];
+	}
+
+	public void clear()
+	{
+		this.addedCount = 0;
+		this.removedCount = 0;
 	}
 
 	public void addPiece(Piece piece, Square square)
 	{
-		this.added[this.addedCount] = new DiffInfo(piece, square);
+		this.added[this.addedCount] = piece.ordinal() << 6 | square.ordinal();
 		this.addedCount++;
 	}
 
 	public void removePiece(Piece piece, Square square)
 	{
-		this.removed[this.removedCount] = new DiffInfo(piece, square);
+		this.removed[this.removedCount] = piece.ordinal() << 6 | square.ordinal();
 		this.removedCount++;
 	}
 
@@ -51,15 +47,25 @@ public class AccumulatorDiff
 		return this.removedCount;
 	}
 
-	public DiffInfo getAdded(int index)
+	public int getAdded(int index)
 	{
 		assert index < getAddedCount();
 		return this.added[index];
 	}
 
-	public DiffInfo getRemoved(int index)
+	public int getRemoved(int index)
 	{
 		assert index < getRemovedCount();
 		return this.removed[index];
 	}
+
+	public static Piece getPiece(int packed)
+	{
+		return Piece.allPieces[packed >>> 6];
+	}
+
+	public static Square getSquare(int packed)
+	{
+		return Square.squareAt(packed & 63);
+	}
 }
@@ -57,8 +57,10 @@ public class Board implements Cloneable
 {
 
 	private static final List<Long> keys = new ArrayList<>();
-	private static final long RANDOM_SEED = 49109794719L;
+	public static final long RANDOM_SEED = 49109794719L;
 	private static final int ZOBRIST_TABLE_SIZE = 2000;
+	private static final int INITIAL_HISTORY_CAPACITY = 1024;
+	private static final int INITIAL_BACKUP_CAPACITY = 1024;
 
 	static
 	{
@@ -70,17 +72,19 @@ public class Board implements Cloneable
 		}
 	}
 
-	private final LinkedList<MoveBackup> backup;
+	private MoveBackup[] backup = new MoveBackup[INITIAL_BACKUP_CAPACITY];
+	private int backupSize;
 	private final long[] bitboard;
 	private final long[] bbSide;
 	private final Piece[] occupation;
 	private final EnumMap<Side, CastleRight> castleRight;
-	private final LinkedList<Long> history = new LinkedList<>();
+	private long[] history = new long[INITIAL_HISTORY_CAPACITY];
+	private int historySize;
 	private Side sideToMove;
 	private Square enPassantTarget;
 	private Square enPassant;
-	private Integer moveCounter;
-	private Integer halfMoveCounter;
+	private int moveCounter;
+	private int halfMoveCounter;
 	private BoardContext context;
 	private boolean enableEvents;
 	private final boolean updateHistory;
@@ -112,7 +116,6 @@ public class Board implements Cloneable
 		bbSide = new long[Side.allSides.length];
 		occupation = new Piece[Square.values().length];
 		castleRight = new EnumMap<>(Side.class);
-		backup = new LinkedList<>();
 		context = gameContext;
 		this.updateHistory = updateHistory;
 		setSideToMove(Side.WHITE);
@@ -200,15 +203,29 @@ public class Board implements Cloneable
 	 * @return the changes to be applied onto the accumulator
 	 */
 	public AccumulatorDiff doMove(final Move move)
+	{
+		return doMove(move, new AccumulatorDiff());
+	}
+
+	/**
+	 * Executes a move on the board, recording the changes to be applied onto the
+	 * accumulator in a caller-owned diff, which is cleared first.
+	 *
+	 * @param move the move to execute
+	 * @param diff the diff to fill
+	 * @return the filled diff
+	 */
+	public AccumulatorDiff doMove(final Move move, final AccumulatorDiff diff)
 	{
 		assert isMoveLegal(move, true);
 		assert isMovePseudoLegal(move);
 
-		AccumulatorDiff diff = new AccumulatorDiff();
+		diff.clear();
 		Piece movingPiece = getPiece(move.getFrom());
 		Side side = getSideToMove();
 
-		MoveBackup backupMove = new MoveBackup(this, move);
+		final MoveBackup backupMove = nextBackup();
+		backupMove.makeBackup(this, move);
 		final boolean isCastle = context.isCastleMove(move);
 
 		incrementalHashKey ^= getSideKey(getSideToMove());
@@ -377,10 +394,10 @@ public class Board implements Cloneable
 
 		if (updateHistory)
 		{
-			getHistory().addLast(getIncrementalHashKey());
+			pushHistory(getIncrementalHashKey());
 		}
 
-		backup.add(backupMove);
+		backupSize++;
 
 		return diff;
 	}
@@ -399,7 +416,7 @@ public class Board implements Cloneable
 	public boolean doNullMove()
 	{
 		Side side = getSideToMove();
-		MoveBackup backupMove = new MoveBackup(this, emptyMove);
+		nextBackup().makeBackup(this, emptyMove);
 
 		setHalfMoveCounter(getHalfMoveCounter() + 1);
 
@@ -412,10 +429,10 @@ public class Board implements Cloneable
 
 		if (updateHistory)
 		{
-			getHistory().addLast(getIncrementalHashKey());
+			pushHistory(getIncrementalHashKey());
 		}
 
-		backup.add(backupMove);
+		backupSize++;
 		return true;
 	}
 
@@ -427,21 +444,38 @@ public class Board implements Cloneable
 	 */
 	public Move undoMove()
 	{
-		Move move = null;
-		final MoveBackup b = backup.removeLast();
+		if (backupSize == 0)
+		{
+			return null;
+		}
+
+		final MoveBackup b = backup[--backupSize];
 
 		if (updateHistory)
 		{
-			getHistory().removeLast();
+			historySize--;
+		}
+
+		b.restore(this);
+
+		return b.getMove();
+	}
+
+	// Backups are recycled by later moves, so once the stack is as deep as the
+	// longest game played on the board, moves no longer allocate
+	private MoveBackup nextBackup()
+	{
+		if (backupSize == backup.length)
+		{
+			backup = Arrays.copyOf(backup, backup.length * 2);
 		}
 
-		if (b != null)
+		if (backup[backupSize] == null)
 		{
-			move = b.getMove();
-			b.restore(this);
+			backup[backupSize] = new MoveBackup();
 		}
 
-		return move;
+		return backup[backupSize];
 	}
 
 	/**
@@ -753,7 +787,7 @@ public class Board implements Cloneable
 	 *
 	 * @return the counter of full moves
 	 */
-	public Integer getMoveCounter()
+	public int getMoveCounter()
 	{
 		return moveCounter;
 	}
@@ -764,7 +798,7 @@ public class Board implements Cloneable
 	 * @param moveCounter the counter of full moves to set
 	 * @see Board#getMoveCounter()
 	 */
-	public void setMoveCounter(Integer moveCounter)
+	public void setMoveCounter(int moveCounter)
 	{
 		this.moveCounter = moveCounter;
 	}
@@ -775,7 +809,7 @@ public class Board implements Cloneable
 	 *
 	 * @return the counter of half moves
 	 */
-	public Integer getHalfMoveCounter()
+	public int getHalfMoveCounter()
 	{
 		return halfMoveCounter;
 	}
@@ -786,7 +820,7 @@ public class Board implements Cloneable
 	 * @param halfMoveCounter the counter of half moves to set
 	 * @see Board#getHalfMoveCounter()
 	 */
-	public void setHalfMoveCounter(Integer halfMoveCounter)
+	public void setHalfMoveCounter(int halfMoveCounter)
 	{
 		this.halfMoveCounter = halfMoveCounter;
 	}
@@ -833,14 +867,14 @@ public class Board implements Cloneable
 	}
 
 	/**
-	 * Returns the current ordered list of move backups generated from the moves
-	 * performed on the board.
+	 * Returns the backup of the last move performed on the board. The backup is
+	 * reused by a later move once that move has been reverted.
 	 *
-	 * @return the list of move backups
+	 * @return the backup of the last move, or null if no moves were played
 	 */
-	public LinkedList<MoveBackup> getBackup()
+	public MoveBackup getLastBackup()
 	{
-		return backup;
+		return backupSize > 0 ? backup[backupSize - 1] : null;
 	}
 
 	/**
@@ -854,12 +888,12 @@ public class Board implements Cloneable
 		setEnPassant(Square.NONE);
 		setMoveCounter(0);
 		setHalfMoveCounter(0);
-		getHistory().clear();
+		historySize = 0;
 
 		Arrays.fill(bitboard, 0L);
 		Arrays.fill(bbSide, 0L);
 		Arrays.fill(occupation, Piece.NONE);
-		backup.clear();
+		backupSize = 0;
 		incrementalHashKey = 0;
 	}
 
@@ -1020,7 +1054,7 @@ public class Board implements Cloneable
 
 		if (updateHistory)
 		{
-			getHistory().addLast(this.getZobristKey());
+			pushHistory(this.getZobristKey());
 		}
 	}
 
@@ -1467,6 +1501,27 @@ public class Board implements Cloneable
 		return false;
 	}
 
+	/**
+	 * Checks if any of the squares of a bitboard is attacked by the given side in
+	 * the current position.
+	 *
+	 * @param squares the bitboard of the target squares
+	 * @param side    the attacking side
+	 * @return {@code true} if any square is attacked
+	 */
+	public boolean isSquareAttackedBy(long squares, Side side)
+	{
+		for (long bb = squares; bb != 0L; bb = extractLsb(bb))
+		{
+			if (squareAttackedBy(Square.squareAt(Bitboard.bitScanForward(bb)), side) != 0L)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Verifies if the move still to be executed can be performed. This checks if it
 	 * is possible to move the piece at from square to the piece at to square. This
@@ -1589,7 +1644,7 @@ public class Board implements Cloneable
 					{
 						if ((getBitboard() & getContext().getooAllSquaresBb(side)) == 0L)
 						{
-							return !isSquareAttackedBy(getContext().getooSquares(side), side.flip());
+							return !isSquareAttackedBy(getContext().getooSquaresBb(side), side.flip());
 						}
 					}
 					return false;
@@ -1602,7 +1657,7 @@ public class Board implements Cloneable
 					{
 						if ((getBitboard() & getContext().getoooAllSquaresBb(side)) == 0L)
 						{
-							return !isSquareAttackedBy(getContext().getoooSquares(side), side.flip());
+							return !isSquareAttackedBy(getContext().getoooSquaresBb(side), side.flip());
 						}
 					}
 
@@ -1704,14 +1759,38 @@ public class Board implements Cloneable
 
 	/**
 	 * Returns the history of the board, represented by the hashes of all the
-	 * positions occurred on the board.
+	 * positions occurred on the board. The returned array is a copy, oldest
+	 * position first.
 	 *
-	 * @return the list of hashes of all the positions occurred on the board
+	 * @return the hashes of all the positions occurred on the board
 	 * @see Board#getIncrementalHashKey()
 	 */
-	public LinkedList<Long> getHistory()
+	public long[] getHistory()
+	{
+		return Arrays.copyOf(history, historySize);
+	}
+
+	/**
+	 * Returns the number of positions in the history of the board.
+	 *
+	 * @return the number of positions occurred on the board
+	 * @see Board#getHistory()
+	 */
+	public int getHistorySize()
+	{
+		return historySize;
+	}
+
+	// The key stack only grows, so once it is as long as the longest game played on
+	// the board, moves no longer allocate
+	private void pushHistory(long key)
 	{
-		return history;
+		if (historySize == history.length)
+		{
+			history = Arrays.copyOf(history, history.length * 2);
+		}
+
+		history[historySize++] = key;
 	}
 
 	/**
@@ -1784,16 +1863,19 @@ public class Board implements Cloneable
 	 */
 	public boolean isRepetition(int n)
 	{
+		final int last = historySize - 1;
+		final int oldest = last - Math.min(last, getHalfMoveCounter());
 
-		final int i = Math.min(getHistory().size() - 1, getHalfMoveCounter());
-		if (getHistory().size() >= 4)
+		if (historySize >= 4)
 		{
-			long lastKey = getHistory().get(getHistory().size() - 1);
+			final long lastKey = history[last];
 			int rep = 0;
-			for (int x = 4; x <= i; x += 2)
+
+			// Only positions with the same side to move, since the last irreversible
+			// move, can repeat the current one
+			for (int x = last - 4; x >= oldest; x -= 2)
 			{
-				final long k = getHistory().get(getHistory().size() - x - 1);
-				if (k == lastKey && ++rep >= n - 1)
+				if (history[x] == lastKey && ++rep >= n - 1)
 				{
 					return true;
 				}
@@ -2104,7 +2186,7 @@ public class Board implements Cloneable
 		if (obj instanceof Board)
 		{
 			Board board = (Board) obj;
-			return equals(board) && board.getHistory().equals(this.getHistory());
+			return equals(board) && Arrays.equals(board.getHistory(), this.getHistory());
 		}
 		return false;
 	}
@@ -2269,12 +2351,8 @@ public class Board implements Cloneable
 		Board copy = new Board(getContext(), this.updateHistory);
 		copy.loadFromFen(this.getFen());
 		copy.setEnPassantTarget(this.getEnPassantTarget());
-		copy.getHistory().clear();
-
-		for (long key : getHistory())
-		{
-			copy.getHistory().add(key);
-		}
+		copy.history = Arrays.copyOf(history, history.length);
+		copy.historySize = historySize;
 
 		return copy;
 	}
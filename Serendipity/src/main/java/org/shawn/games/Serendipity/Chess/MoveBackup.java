@@ -18,8 +18,6 @@ package org.shawn.games.Serendipity.Chess;
 
 import static org.shawn.games.Serendipity.Chess.Constants.emptyMove;
 
-import java.util.EnumMap;
-
 import org.shawn.games.Serendipity.Chess.move.Move;
 
 /**
@@ -34,12 +32,17 @@ import org.shawn.games.Serendipity.Chess.move.Move;
  */
 public class MoveBackup
 {
-	private final EnumMap<Side, CastleRight> castleRight;
+	private static final CastleRight[] CASTLE_RIGHTS = CastleRight.values();
+	private static final int CASTLE_RIGHT_BITS = 2;
+	private static final int CASTLE_RIGHT_MASK = (1 << CASTLE_RIGHT_BITS) - 1;
+
+	// The castle rights of both sides, packed by side ordinal
+	private int castleRights;
 	private Side sideToMove;
 	private Square enPassantTarget;
 	private Square enPassant;
-	private Integer moveCounter;
-	private Integer halfMoveCounter;
+	private int moveCounter;
+	private int halfMoveCounter;
 	private Move move;
 	private Move rookCastleMove;
 	private Piece capturedPiece;
@@ -54,7 +57,6 @@ public class MoveBackup
 	 */
 	public MoveBackup()
 	{
-		castleRight = new EnumMap<>(Side.class);
 	}
 
 	/**
@@ -87,8 +89,8 @@ public class MoveBackup
 		setMoveCounter(board.getMoveCounter());
 		setHalfMoveCounter(board.getHalfMoveCounter());
 		setMove(move);
-		getCastleRight().put(Side.WHITE, board.getCastleRight(Side.WHITE));
-		getCastleRight().put(Side.BLACK, board.getCastleRight(Side.BLACK));
+		setCastleRight(Side.WHITE, board.getCastleRight(Side.WHITE));
+		setCastleRight(Side.BLACK, board.getCastleRight(Side.BLACK));
 		setCapturedPiece(board.getPiece(move.getTo()));
 		setCapturedSquare(move.getTo());
 		Piece moving = board.getPiece(move.getFrom());
@@ -128,8 +130,8 @@ public class MoveBackup
 		board.setHalfMoveCounter(getHalfMoveCounter());
 		Piece movingPiece = move.getPromotion() == PieceType.NONE ? getMovingPiece()
 				: Piece.make(getSideToMove(), move.getPromotion());
-		board.getCastleRight().put(Side.WHITE, getCastleRight().get(Side.WHITE));
-		board.getCastleRight().put(Side.BLACK, getCastleRight().get(Side.BLACK));
+		board.getCastleRight().put(Side.WHITE, getCastleRight(Side.WHITE));
+		board.getCastleRight().put(Side.BLACK, getCastleRight(Side.BLACK));
 
 		if (move != emptyMove)
 		{
@@ -227,7 +229,7 @@ public class MoveBackup
 	 *
 	 * @return the counter of full moves
 	 */
-	public Integer getMoveCounter()
+	public int getMoveCounter()
 	{
 		return moveCounter;
 	}
@@ -237,7 +239,7 @@ public class MoveBackup
 	 *
 	 * @param moveCounter the counter of full moves
 	 */
-	public void setMoveCounter(Integer moveCounter)
+	public void setMoveCounter(int moveCounter)
 	{
 		this.moveCounter = moveCounter;
 	}
@@ -247,7 +249,7 @@ public class MoveBackup
 	 *
 	 * @return the counter of half moves
 	 */
-	public Integer getHalfMoveCounter()
+	public int getHalfMoveCounter()
 	{
 		return halfMoveCounter;
 	}
@@ -257,7 +259,7 @@ public class MoveBackup
 	 *
 	 * @param halfMoveCounter the counter of half moves
 	 */
-	public void setHalfMoveCounter(Integer halfMoveCounter)
+	public void setHalfMoveCounter(int halfMoveCounter)
 	{
 		this.halfMoveCounter = halfMoveCounter;
 	}
@@ -306,13 +308,27 @@ public class MoveBackup
 	}
 
 	/**
-	 * Returns the castle rights used for restoring the board.
+	 * Returns the castle right of a side used for restoring the board.
 	 *
-	 * @return the castle rights
+	 * @param side the side for which the castle right must be returned
+	 * @return the castle right of the side
 	 */
-	public EnumMap<Side, CastleRight> getCastleRight()
+	public CastleRight getCastleRight(Side side)
 	{
-		return castleRight;
+		return CASTLE_RIGHTS[(castleRights >>> (side.ordinal() * CASTLE_RIGHT_BITS)) & CASTLE_RIGHT_MASK];
+	}
+
+	/**
+	 * Sets the castle right of a side used for restoring the board.
+	 *
+	 * @param side        the side for which the castle right must be set
+	 * @param castleRight the castle right of the side
+	 */
+	public void setCastleRight(Side side, CastleRight castleRight)
+	{
+		final int shift = side.ordinal() * CASTLE_RIGHT_BITS;
+
+		castleRights = (castleRights & ~(CASTLE_RIGHT_MASK << shift)) | (castleRight.ordinal() << shift);
 	}
 
 	/**
@@ -200,7 +200,7 @@ public class MoveList extends LinkedList<Move> implements List<Move>
 
 		board.doMove(move);
 
-		Piece captured = board.getBackup().getLast().getCapturedPiece();
+		Piece captured = board.getLastBackup().getCapturedPiece();
 		boolean isCapture = !captured.equals(Piece.NONE);
 		if (isCapture)
 		{
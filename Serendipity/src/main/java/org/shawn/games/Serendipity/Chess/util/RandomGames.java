@@ -0,0 +1,73 @@
+package org.shawn.games.Serendipity.Chess.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.move.Move;
+
+/**
+ * Plays uniformly random legal moves, for benchmarks and tests that need
+ * reproducible games.
+ */
+public class RandomGames
+{
+	private RandomGames()
+	{
+	}
+
+	/**
+	 * Returns a random legal move in the position of the board, or {@code null} if
+	 * the game is over, either drawn or without legal moves.
+	 *
+	 * @param board  the board to pick a move on, which is left unchanged
+	 * @param random the random number generator to pick the move with
+	 * @return a random legal move, or {@code null} if the game is over
+	 */
+	public static Move randomMove(Board board, Random random)
+	{
+		if (board.isDraw())
+		{
+			return null;
+		}
+
+		final List<Move> moves = board.legalMoves();
+
+		if (moves.isEmpty())
+		{
+			return null;
+		}
+
+		return moves.get(random.nextInt(moves.size()));
+	}
+
+	/**
+	 * Plays random legal moves on the board until the game is over or the given
+	 * number of plies has been played. The board is left at the last position.
+	 *
+	 * @param board    the board to play on, from its current position
+	 * @param random   the random number generator to pick the moves with
+	 * @param maxPlies the maximum number of plies to play
+	 * @return the moves played, in order
+	 */
+	public static List<Move> play(Board board, Random random, int maxPlies)
+	{
+		final List<Move> moves = new ArrayList<>();
+
+		while (moves.size() < maxPlies)
+		{
+			final Move move = randomMove(board, random);
+
+			if (move == null)
+			{
+				break;
+			}
+
+			board.doMove(move);
+			moves.add(move);
+		}
+
+		return moves;
+	}
+}
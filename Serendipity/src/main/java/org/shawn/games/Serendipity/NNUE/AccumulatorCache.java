@@ -14,9 +14,9 @@ public class AccumulatorCache
 		private final long[] bySide;
 		private final long[] byPieceType;
 
-		public Entry()
+		public Entry(int hiddenSize)
 		{
-			storedAccumulator = new short[NNUE.HIDDEN_SIZE];
+			storedAccumulator = new short[hiddenSize];
 			bySide = new long[Side.values().length];
 			byPieceType = new long[PieceType.validValues().length];
 		}
@@ -44,13 +44,13 @@ public class AccumulatorCache
 
 	public AccumulatorCache(NNUE network)
 	{
-		entries = new Entry[Side.values().length][NNUE.INPUT_BUCKET_SIZE];
+		entries = new Entry[Side.values().length][network.inputBucketCount];
 
 		for (int i = 0; i < entries.length; i++)
 		{
 			for (int j = 0; j < entries[0].length; j++)
 			{
-				entries[i][j] = new Entry();
+				entries[i][j] = new Entry(network.hiddenSize);
 			}
 		}
 
@@ -63,9 +63,9 @@ public class AccumulatorCache
 		{
 			for (Entry entry : row)
 			{
-				assert entry.storedAccumulator.length == NNUE.HIDDEN_SIZE;
+				assert entry.storedAccumulator.length == network.hiddenSize;
 
-				System.arraycopy(network.L1Biases, 0, entry.storedAccumulator, 0, NNUE.HIDDEN_SIZE);
+				System.arraycopy(network.L1Biases, 0, entry.storedAccumulator, 0, network.hiddenSize);
 				Arrays.fill(entry.bySide, 0L);
 				Arrays.fill(entry.byPieceType, 0L);
 			}
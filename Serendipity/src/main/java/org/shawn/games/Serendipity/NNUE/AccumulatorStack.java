@@ -42,7 +42,7 @@ public class AccumulatorStack
 
 		public Accumulator()
 		{
-			this.values = new short[NNUE.HIDDEN_SIZE];
+			this.values = new short[network.hiddenSize];
 		}
 
 		public Accumulator(NNUE network, Side color)
@@ -54,35 +54,25 @@ public class AccumulatorStack
 
 		private void addSub(Accumulator prev, int featureIndexToAdd, int featureIndexToSubtract)
 		{
-			featureIndexToAdd = featureIndexToAdd + kingBucket * NNUE.FEATURE_SIZE;
-			featureIndexToSubtract = featureIndexToSubtract + kingBucket * NNUE.FEATURE_SIZE;
-
-			INFERENCE.addSub(values, prev.values, network.L1Weights[featureIndexToAdd],
-					network.L1Weights[featureIndexToSubtract]);
+			inference.addSub(values, prev.values, network.L1Weights, network.l1Offset(featureIndexToAdd, kingBucket),
+					network.l1Offset(featureIndexToSubtract, kingBucket));
 		}
 
 		private void addSubSub(Accumulator prev, int featureIndexToAdd, int featureIndexToSubtract1,
 				int featureIndexToSubtract2)
 		{
-			featureIndexToAdd = featureIndexToAdd + kingBucket * NNUE.FEATURE_SIZE;
-			featureIndexToSubtract1 = featureIndexToSubtract1 + kingBucket * NNUE.FEATURE_SIZE;
-			featureIndexToSubtract2 = featureIndexToSubtract2 + kingBucket * NNUE.FEATURE_SIZE;
-
-			INFERENCE.addSubSub(values, prev.values, network.L1Weights[featureIndexToAdd],
-					network.L1Weights[featureIndexToSubtract1], network.L1Weights[featureIndexToSubtract2]);
+			inference.addSubSub(values, prev.values, network.L1Weights, network.l1Offset(featureIndexToAdd, kingBucket),
+					network.l1Offset(featureIndexToSubtract1, kingBucket),
+					network.l1Offset(featureIndexToSubtract2, kingBucket));
 		}
 
 		private void addAddSubSub(Accumulator prev, int featureIndexToAdd1, int featureIndexToAdd2,
 				int featureIndexToSubtract1, int featureIndexToSubtract2)
 		{
-			featureIndexToAdd1 = featureIndexToAdd1 + kingBucket * NNUE.FEATURE_SIZE;
-			featureIndexToAdd2 = featureIndexToAdd2 + kingBucket * NNUE.FEATURE_SIZE;
-			featureIndexToSubtract1 = featureIndexToSubtract1 + kingBucket * NNUE.FEATURE_SIZE;
-			featureIndexToSubtract2 = featureIndexToSubtract2 + kingBucket * NNUE.FEATURE_SIZE;
-
-			INFERENCE.addAddSubSub(values, prev.values, network.L1Weights[featureIndexToAdd1],
-					network.L1Weights[featureIndexToAdd2], network.L1Weights[featureIndexToSubtract1],
-					network.L1Weights[featureIndexToSubtract2]);
+			inference.addAddSubSub(values, prev.values, network.L1Weights,
+					network.l1Offset(featureIndexToAdd1, kingBucket), network.l1Offset(featureIndexToAdd2, kingBucket),
+					network.l1Offset(featureIndexToSubtract1, kingBucket),
+					network.l1Offset(featureIndexToSubtract2, kingBucket));
 		}
 
 		private void efficientlyUpdate(Accumulator prev)
@@ -122,9 +112,19 @@ public class AccumulatorStack
 			this.needsRefresh = false;
 		}
 
+		private int addedOffset(int index)
+		{
+			return network.l1Offset(NNUE.getIndex(this.diff.getAdded(index), this.color), kingBucket);
+		}
+
+		private int removedOffset(int index)
+		{
+			return network.l1Offset(NNUE.getIndex(this.diff.getRemoved(index), this.color), kingBucket);
+		}
+
 		private void updateFromCache(Board board)
 		{
-			AccumulatorCache.Entry entry = cache.get(this.color, NNUE.chooseInputBucket(board, this.color));
+			AccumulatorCache.Entry entry = cache.get(this.color, network.chooseInputBucket(board, this.color));
 
 			for (final Side side : Side.values())
 			{
@@ -140,15 +140,13 @@ public class AccumulatorStack
 					while (added != 0L && removed != 0L)
 					{
 						final Square sqRemoved = Square.squareAt(Bitboard.bitScanForward(removed));
-						final int removedIndex = NNUE.getIndex(sqRemoved, piece, this.color)
-								+ kingBucket * NNUE.FEATURE_SIZE;
+						final int removedIndex = NNUE.getIndex(sqRemoved, piece, this.color);
 
 						final Square sqAdded = Square.squareAt(Bitboard.bitScanForward(added));
-						final int addedIndex = NNUE.getIndex(sqAdded, piece, this.color)
-								+ kingBucket * NNUE.FEATURE_SIZE;
+						final int addedIndex = NNUE.getIndex(sqAdded, piece, this.color);
 
-						INFERENCE.addSub(entry.storedAccumulator, entry.storedAccumulator,
-								network.L1Weights[addedIndex], network.L1Weights[removedIndex]);
+						inference.addSub(entry.storedAccumulator, entry.storedAccumulator, network.L1Weights,
+								network.l1Offset(addedIndex, kingBucket), network.l1Offset(removedIndex, kingBucket));
 
 						removed = Bitboard.extractLsb(removed);
 						added = Bitboard.extractLsb(added);
@@ -157,10 +155,10 @@ public class AccumulatorStack
 					while (removed != 0L)
 					{
 						final Square sq = Square.squareAt(Bitboard.bitScanForward(removed));
-						final int featureIndex = NNUE.getIndex(sq, piece, this.color) + kingBucket * NNUE.FEATURE_SIZE;
+						final int featureIndex = NNUE.getIndex(sq, piece, this.color);
 
-						INFERENCE.sub(entry.storedAccumulator, entry.storedAccumulator,
-								network.L1Weights[featureIndex]);
+						inference.sub(entry.storedAccumulator, entry.storedAccumulator, network.L1Weights,
+								network.l1Offset(featureIndex, kingBucket));
 
 						removed = Bitboard.extractLsb(removed);
 					}
@@ -168,17 +166,17 @@ public class AccumulatorStack
 					while (added != 0L)
 					{
 						final Square sq = Square.squareAt(Bitboard.bitScanForward(added));
-						final int featureIndex = NNUE.getIndex(sq, piece, this.color) + kingBucket * NNUE.FEATURE_SIZE;
+						final int featureIndex = NNUE.getIndex(sq, piece, this.color);
 
-						INFERENCE.add(entry.storedAccumulator, entry.storedAccumulator,
-								network.L1Weights[featureIndex]);
+						inference.add(entry.storedAccumulator, entry.storedAccumulator, network.L1Weights,
+								network.l1Offset(featureIndex, kingBucket));
 
 						added = Bitboard.extractLsb(added);
 					}
 				}
 			}
 
-			System.arraycopy(entry.storedAccumulator, 0, values, 0, NNUE.HIDDEN_SIZE);
+			System.arraycopy(entry.storedAccumulator, 0, values, 0, values.length);
 
 			entry.update(board);
 
@@ -190,12 +188,12 @@ public class AccumulatorStack
 			this.diff = diff;
 			this.color = prev.color;
 			this.needsRefresh = true;
-			this.kingBucket = NNUE.chooseInputBucket(board, this.color);
+			this.kingBucket = network.chooseInputBucket(board, this.color);
 		}
 
 		private void loadFromBoard(Board board)
 		{
-			this.kingBucket = NNUE.chooseInputBucket(board, this.color);
+			this.kingBucket = network.chooseInputBucket(board, this.color);
 			this.needsRefresh = true;
 			updateFromCache(board);
 		}
@@ -204,10 +202,12 @@ public class AccumulatorStack
 	public class AccumulatorPair
 	{
 		Accumulator[] accumulators;
+		final AccumulatorDiff diff;
 
 		public AccumulatorPair()
 		{
 			accumulators = new Accumulator[] { new Accumulator(), new Accumulator() };
+			diff = new AccumulatorDiff();
 		}
 
 		public void init()
@@ -232,17 +232,62 @@ public class AccumulatorStack
 		{
 			return this.accumulators[side.ordinal()];
 		}
+
+		// Both perspectives apply the same diff, so they are updated in one loop
+		private void efficientlyUpdate(AccumulatorPair prev)
+		{
+			final Accumulator white = this.get(Side.WHITE);
+			final Accumulator black = this.get(Side.BLACK);
+			final short[] whiteFrom = prev.get(Side.WHITE).values;
+			final short[] blackFrom = prev.get(Side.BLACK).values;
+			final int addedCount = white.diff.getAddedCount();
+			final int removedCount = white.diff.getRemovedCount();
+
+			assert !prev.get(Side.WHITE).needsRefresh && !prev.get(Side.BLACK).needsRefresh;
+
+			if (addedCount == 1 && removedCount == 1)
+			{
+				inference.addSub(white.values, whiteFrom, black.values, blackFrom, network.L1Weights,
+						white.addedOffset(0), white.removedOffset(0), black.addedOffset(0), black.removedOffset(0));
+			}
+
+			else if (addedCount == 1 && removedCount == 2)
+			{
+				inference.addSubSub(white.values, whiteFrom, black.values, blackFrom, network.L1Weights,
+						white.addedOffset(0), white.removedOffset(0), white.removedOffset(1), black.addedOffset(0),
+						black.removedOffset(0), black.removedOffset(1));
+			}
+
+			else
+			{
+				assert addedCount == 2 && removedCount == 2;
+
+				inference.addAddSubSub(white.values, whiteFrom, black.values, blackFrom, network.L1Weights,
+						white.addedOffset(0), white.addedOffset(1), white.removedOffset(0), white.removedOffset(1),
+						black.addedOffset(0), black.addedOffset(1), black.removedOffset(0), black.removedOffset(1));
+			}
+
+			white.needsRefresh = false;
+			black.needsRefresh = false;
+		}
 	}
 
-	private static final Inference INFERENCE = InferenceChooser.chooseInference();
 	private final NNUE network;
+	private final Inference inference;
 	private final AccumulatorPair[] stack;
 	private final AccumulatorCache cache;
 	private int top;
 
 	public AccumulatorStack(NNUE network)
+	{
+		this(network, network.inference);
+	}
+
+	// Updates with the given kernel instead of the one chosen for the network
+	public AccumulatorStack(NNUE network, Inference inference)
 	{
 		this.network = network;
+		this.inference = inference;
 		this.stack = new AccumulatorPair[AlphaBeta.MAX_PLY + 1];
 		this.cache = new AccumulatorCache(network);
 
@@ -257,6 +302,13 @@ public class AccumulatorStack
 		top--;
 	}
 
+	// The diff of the next move is recorded in a slot owned by the stack, so that
+	// making moves does not allocate
+	public AccumulatorDiff nextDiff()
+	{
+		return this.stack[top + 1].diff;
+	}
+
 	public void push(Board board, Move move, final AccumulatorDiff diff)
 	{
 		top++;
@@ -270,57 +322,78 @@ public class AccumulatorStack
 		this.stack[0].loadFromBoard(board);
 	}
 
+	// The next refresh of every king bucket starts again from the biases
+	void clearCache()
+	{
+		this.cache.clear(network);
+	}
+
 	public void printAccumulator(Side side)
 	{
-		for (int i = 0; i < NNUE.HIDDEN_SIZE; i++)
+		for (int i = 0; i < network.hiddenSize; i++)
 		{
 			System.out.print(this.stack[top].accumulators[side.ordinal()].values[i] + ", ");
 		}
 	}
 
-	private void efficientlyUpdate(int fromIdx, int toIdx, Side side)
+	// Returns the index of the closest accumulator the one on top can be updated
+	// from, or -1 if it has to be refreshed from the cache instead
+	private int findCleanAncestor(Side side)
 	{
-		for (int i = fromIdx; i < toIdx; i++)
+		final int startingKingBucket = this.stack[top].get(side).kingBucket;
+
+		for (int currIdx = top; currIdx >= 0; currIdx--)
 		{
-			Accumulator from = this.stack[i].get(side);
-			Accumulator to = this.stack[i + 1].get(side);
+			Accumulator currAccumulator = this.stack[currIdx].get(side);
 
-			assert !from.needsRefresh && to.needsRefresh;
+			if (currAccumulator.kingBucket != startingKingBucket)
+				break;
 
-			to.efficientlyUpdate(from);
+			if (!currAccumulator.needsRefresh)
+				return currIdx;
 		}
+
+		return -1;
 	}
 
-	private void refreshAccumulator(Board board, Side side)
+	public AccumulatorPair refreshAndGet(Board board)
 	{
-		Accumulator startingAccumulator = this.stack[top].get(side);
+		int whiteIdx = findCleanAncestor(Side.WHITE);
+		int blackIdx = findCleanAncestor(Side.BLACK);
 
-		if (!startingAccumulator.needsRefresh)
-			return;
-
-		int startingKingBucket = startingAccumulator.kingBucket;
+		if (whiteIdx < 0)
+		{
+			this.stack[top].get(Side.WHITE).updateFromCache(board);
+			whiteIdx = top;
+		}
 
-		for (int currIdx = top - 1; currIdx >= 0; currIdx--)
+		if (blackIdx < 0)
 		{
-			Accumulator currAccumulator = this.stack[currIdx].get(side);
+			this.stack[top].get(Side.BLACK).updateFromCache(board);
+			blackIdx = top;
+		}
 
-			if (currAccumulator.kingBucket != startingKingBucket)
-				break;
+		// Plies both perspectives have to catch up on are updated together
+		for (int currIdx = Math.min(whiteIdx, blackIdx); currIdx < top; currIdx++)
+		{
+			final AccumulatorPair from = this.stack[currIdx];
+			final AccumulatorPair to = this.stack[currIdx + 1];
 
-			if (!currAccumulator.needsRefresh)
+			if (currIdx >= whiteIdx && currIdx >= blackIdx)
 			{
-				efficientlyUpdate(currIdx, top, side);
-				return;
+				to.efficientlyUpdate(from);
 			}
-		}
 
-		startingAccumulator.updateFromCache(board);
-	}
+			else if (currIdx >= whiteIdx)
+			{
+				to.get(Side.WHITE).efficientlyUpdate(from.get(Side.WHITE));
+			}
 
-	public AccumulatorPair refreshAndGet(Board board)
-	{
-		refreshAccumulator(board, Side.WHITE);
-		refreshAccumulator(board, Side.BLACK);
+			else
+			{
+				to.get(Side.BLACK).efficientlyUpdate(from.get(Side.BLACK));
+			}
+		}
 
 		return this.stack[top];
 	}
@@ -0,0 +1,205 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity.NNUE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.Piece;
+
+// Evaluates many positions on a fork-join pool. Positions are handed out in
+// chunks of consecutive lines, and every worker thread keeps its own board and
+// accumulator stack across chunks, so that positions from the same game refresh
+// from the accumulator cache instead of from scratch
+public class BatchEvaluator implements AutoCloseable
+{
+	public static final int NONE = Integer.MIN_VALUE;
+
+	private static final int CHUNK_SIZE = 1024;
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final NNUE network;
+	private final ForkJoinPool pool;
+	private final int maxPending;
+	private final ThreadLocal<Worker> workers;
+
+	private class Worker
+	{
+		final Board board = new Board();
+		final AccumulatorStack accumulators = new AccumulatorStack(network);
+
+		int evaluate(String line)
+		{
+			final int separator = line.indexOf('|');
+
+			try
+			{
+				board.loadFromFen((separator < 0 ? line : line.substring(0, separator)).trim());
+			}
+
+			catch (RuntimeException e)
+			{
+				return NONE;
+			}
+
+			// The input buckets are chosen by king square, so a position without exactly
+			// one king per side parses but cannot be evaluated
+			if (Long.bitCount(board.getBitboard(Piece.WHITE_KING)) != 1
+					|| Long.bitCount(board.getBitboard(Piece.BLACK_KING)) != 1)
+			{
+				return NONE;
+			}
+
+			accumulators.init(board);
+
+			return NNUE.evaluate(board, network, accumulators);
+		}
+	}
+
+	public BatchEvaluator(NNUE network, int threads)
+	{
+		this.network = network;
+		this.pool = new ForkJoinPool(threads);
+		this.maxPending = threads * CHUNKS_PER_THREAD;
+		this.workers = ThreadLocal.withInitial(Worker::new);
+	}
+
+	private int[] evaluateChunk(List<String> fens)
+	{
+		final int[] evaluations = new int[fens.size()];
+
+		for (int i = 0; i < evaluations.length; i++)
+		{
+			if (fens.get(i).isBlank())
+			{
+				evaluations[i] = NONE;
+				continue;
+			}
+
+			try
+			{
+				evaluations[i] = workers.get().evaluate(fens.get(i));
+			}
+
+			// Any other invalid position must not end the batch. The failed worker may
+			// have left its accumulator cache half updated, so it is replaced.
+			catch (RuntimeException e)
+			{
+				evaluations[i] = NONE;
+				workers.remove();
+			}
+		}
+
+		return evaluations;
+	}
+
+	// Returns the side to move relative evaluation of every position, or NONE for
+	// the ones that could not be parsed or evaluated
+	public int[] evaluate(List<String> fens)
+	{
+		final List<ForkJoinTask<int[]>> tasks = new ArrayList<>();
+
+		for (int i = 0; i < fens.size(); i += CHUNK_SIZE)
+		{
+			final List<String> chunk = fens.subList(i, Math.min(fens.size(), i + CHUNK_SIZE));
+			tasks.add(pool.submit(() -> evaluateChunk(chunk)));
+		}
+
+		final int[] evaluations = new int[fens.size()];
+		int position = 0;
+
+		for (ForkJoinTask<int[]> task : tasks)
+		{
+			final int[] chunkEvaluations = task.join();
+			System.arraycopy(chunkEvaluations, 0, evaluations, position, chunkEvaluations.length);
+			position += chunkEvaluations.length;
+		}
+
+		return evaluations;
+	}
+
+	// Reads one FEN per line, optionally followed by other fields after a '|' as in
+	// training data, and writes one evaluation per line, in the same order.
+	// Only a bounded number of chunks is in flight, so inputs of any size stream
+	// through in constant memory. Returns the number of lines evaluated
+	public long evaluate(BufferedReader input, Writer output) throws IOException
+	{
+		final Deque<ForkJoinTask<int[]>> pending = new ArrayDeque<>();
+		long lines = 0;
+		List<String> chunk;
+
+		while (!(chunk = readChunk(input)).isEmpty())
+		{
+			final List<String> fens = chunk;
+
+			lines += fens.size();
+			pending.add(pool.submit(() -> evaluateChunk(fens)));
+
+			if (pending.size() >= maxPending)
+			{
+				write(pending.poll().join(), output);
+			}
+		}
+
+		while (!pending.isEmpty())
+		{
+			write(pending.poll().join(), output);
+		}
+
+		output.flush();
+
+		return lines;
+	}
+
+	private static List<String> readChunk(BufferedReader input) throws IOException
+	{
+		final List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+		String line;
+
+		while (chunk.size() < CHUNK_SIZE && (line = input.readLine()) != null)
+		{
+			chunk.add(line);
+		}
+
+		return chunk;
+	}
+
+	private static void write(int[] evaluations, Writer output) throws IOException
+	{
+		for (int evaluation : evaluations)
+		{
+			output.write(evaluation == NONE ? "none\n" : evaluation + "\n");
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		pool.shutdown();
+	}
+}
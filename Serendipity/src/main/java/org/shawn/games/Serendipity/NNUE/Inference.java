@@ -19,21 +19,34 @@
 
 package org.shawn.games.Serendipity.NNUE;
 
-import org.shawn.games.Serendipity.Chess.Side;
-
 public interface Inference
 {
-	int forward(AccumulatorStack.AccumulatorPair accumulators, Side side, final short[] weights, final short bias);
+	// The weight arguments are offsets of rows, one hidden layer long, in the flat weights array
+
+	int forward(final short[] us, final short[] them, final short[] weights, int weightsOffset, final short bias);
+
+	void add(short[] to, final short[] from, final short[] weights, int added);
+
+	void sub(short[] to, final short[] from, final short[] weights, int removed);
+
+	void addSub(short[] to, final short[] from, final short[] weights, int added, int subtracted);
+
+	void addSubSub(short[] to, final short[] from, final short[] weights, int added, int subtracted1,
+			int subtracted2);
 
-	void add(short[] to, final short[] from, final short[] added);
+	void addAddSubSub(short[] to, final short[] from, final short[] weights, int added1, int added2, int subtracted1,
+			int subtracted2);
 
-	void sub(short[] to, final short[] from, final short[] removed);
+	// The same updates applied to both perspectives in a single loop
 
-	void addSub(short[] to, final short[] from, final short[] added, final short[] subtracted);
+	void addSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded, int whiteSubtracted, int blackAdded, int blackSubtracted);
 
-	void addSubSub(short[] to, final short[] from, final short[] added, final short[] subtracted1,
-			final short[] subtracted2);
+	void addSubSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded, int whiteSubtracted1, int whiteSubtracted2, int blackAdded,
+			int blackSubtracted1, int blackSubtracted2);
 
-	void addAddSubSub(short[] to, final short[] from, final short[] added1, final short[] added2,
-			final short[] subtracted1, final short[] subtracted2);
+	void addAddSubSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded1, int whiteAdded2, int whiteSubtracted1, int whiteSubtracted2,
+			int blackAdded1, int blackAdded2, int blackSubtracted1, int blackSubtracted2);
 }
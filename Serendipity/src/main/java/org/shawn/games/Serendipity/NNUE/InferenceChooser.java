@@ -19,17 +19,60 @@
 
 package org.shawn.games.Serendipity.NNUE;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import jdk.incubator.vector.ShortVector;
 
 public class InferenceChooser
 {
-	public static Inference chooseInference()
+	private static final Map<Integer, Inference> CHOSEN = new ConcurrentHashMap<>();
+
+	// Kernels are bound to the hidden size of a network, and chosen once per size
+	public static Inference chooseInference(int hiddenSize)
+	{
+		return CHOSEN.computeIfAbsent(hiddenSize, InferenceChooser::choose);
+	}
+
+	// Every kernel that can run a network of the given hidden size, scalar first
+	public static List<Inference> supportedInferences(int hiddenSize)
+	{
+		final List<Inference> inferences = new ArrayList<>();
+
+		inferences.add(new ScalarInference(hiddenSize));
+
+		if (SIMD128Inference.supports(hiddenSize))
+		{
+			inferences.add(new SIMD128Inference(hiddenSize));
+		}
+
+		if (SIMDInference.supports(hiddenSize))
+		{
+			inferences.add(new SIMDInference(hiddenSize));
+		}
+
+		return inferences;
+	}
+
+	// The widest kernel the preferred vector shape allows. Timing the kernels
+	// would take about a second at startup and could pick differently from run to
+	// run, so that is left to bench inference
+	private static Inference choose(int hiddenSize)
 	{
-		if (ShortVector.SPECIES_PREFERRED.vectorBitSize() >= 256)
+		final int vectorBits = ShortVector.SPECIES_PREFERRED.vectorBitSize();
+
+		if (vectorBits >= 256 && SIMDInference.supports(hiddenSize))
+		{
+			return new SIMDInference(hiddenSize);
+		}
+
+		if (vectorBits >= 128 && SIMD128Inference.supports(hiddenSize))
 		{
-			return new SIMDInference();
+			return new SIMD128Inference(hiddenSize);
 		}
 
-		return new ScalarInference();
+		return new ScalarInference(hiddenSize);
 	}
 }
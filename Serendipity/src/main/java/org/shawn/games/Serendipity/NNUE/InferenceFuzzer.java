@@ -0,0 +1,176 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity.NNUE;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.shawn.games.Serendipity.Chess.AccumulatorDiff;
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.Side;
+import org.shawn.games.Serendipity.Chess.move.Move;
+import org.shawn.games.Serendipity.Chess.util.RandomGames;
+
+// Plays random legal games and checks that every inference kernel arrives at
+// exactly the same accumulators and evaluation at each ply, whether the
+// accumulators were updated incrementally, refreshed from the accumulator cache
+// or refreshed from scratch. Moves are sometimes taken back and some plies are
+// not evaluated, so that updates also run over several plies at once
+public class InferenceFuzzer
+{
+	private static final double UNDO_CHANCE = 0.1;
+	private static final double EVALUATE_CHANCE = 0.7;
+
+	private final NNUE network;
+	private final List<Inference> kernels;
+	private final Random random;
+
+	private final AccumulatorStack[] incremental;
+	private final AccumulatorStack[] cached;
+	private final AccumulatorStack[] refreshed;
+
+	private int game;
+
+	public InferenceFuzzer(NNUE network, long seed)
+	{
+		this.network = network;
+		this.kernels = InferenceChooser.supportedInferences(network.getHiddenSize());
+		this.random = new Random(seed);
+
+		this.incremental = new AccumulatorStack[kernels.size()];
+		this.cached = new AccumulatorStack[kernels.size()];
+		this.refreshed = new AccumulatorStack[kernels.size()];
+
+		for (int i = 0; i < kernels.size(); i++)
+		{
+			this.incremental[i] = new AccumulatorStack(network, kernels.get(i));
+			this.cached[i] = new AccumulatorStack(network, kernels.get(i));
+			this.refreshed[i] = new AccumulatorStack(network, kernels.get(i));
+		}
+	}
+
+	public List<Inference> getKernels()
+	{
+		return kernels;
+	}
+
+	// Returns the number of positions compared, and throws IllegalStateException on
+	// the first difference
+	public long run(int games, int maxPlies)
+	{
+		long positions = 0;
+
+		for (game = 0; game < games; game++)
+		{
+			final Board board = new Board();
+			int plies = 0;
+
+			for (AccumulatorStack accumulators : incremental)
+			{
+				accumulators.init(board);
+			}
+
+			for (int i = 0; i < maxPlies; i++)
+			{
+				if (plies > 0 && random.nextDouble() < UNDO_CHANCE)
+				{
+					board.undoMove();
+					plies--;
+
+					for (AccumulatorStack accumulators : incremental)
+					{
+						accumulators.pop();
+					}
+				}
+
+				else
+				{
+					final Move move = RandomGames.randomMove(board, random);
+
+					if (move == null)
+					{
+						break;
+					}
+
+					final AccumulatorDiff diff = board.doMove(move);
+					plies++;
+
+					for (AccumulatorStack accumulators : incremental)
+					{
+						accumulators.push(board, move, diff);
+					}
+				}
+
+				if (random.nextDouble() < EVALUATE_CHANCE)
+				{
+					compare(board);
+					positions++;
+				}
+			}
+		}
+
+		return positions;
+	}
+
+	private void compare(Board board)
+	{
+		final int expected = NNUE.evaluate(board, network, incremental[0], kernels.get(0));
+		final AccumulatorStack.AccumulatorPair expectedPair = incremental[0].refreshAndGet(board);
+
+		for (int i = 0; i < kernels.size(); i++)
+		{
+			cached[i].init(board);
+			refreshed[i].clearCache();
+			refreshed[i].init(board);
+
+			check(board, i, "incremental", incremental[i], expected, expectedPair);
+			check(board, i, "cached", cached[i], expected, expectedPair);
+			check(board, i, "refreshed", refreshed[i], expected, expectedPair);
+		}
+	}
+
+	private void check(Board board, int kernel, String path, AccumulatorStack accumulators, int expected,
+			AccumulatorStack.AccumulatorPair expectedPair)
+	{
+		final int actual = NNUE.evaluate(board, network, accumulators, kernels.get(kernel));
+		final AccumulatorStack.AccumulatorPair actualPair = accumulators.refreshAndGet(board);
+
+		for (Side side : Side.values())
+		{
+			if (!Arrays.equals(expectedPair.get(side).values, actualPair.get(side).values))
+			{
+				throw new IllegalStateException(describe(board, kernel, path) + ": " + side + " accumulator differs");
+			}
+		}
+
+		if (actual != expected)
+		{
+			throw new IllegalStateException(
+					describe(board, kernel, path) + ": evaluation " + actual + ", expected " + expected);
+		}
+	}
+
+	private String describe(Board board, int kernel, String path)
+	{
+		return kernels.get(kernel).getClass().getSimpleName() + " " + path + " in game " + game + " at "
+				+ board.getFen();
+	}
+}
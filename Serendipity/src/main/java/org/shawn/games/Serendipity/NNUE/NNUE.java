@@ -20,7 +20,10 @@
 package org.shawn.games.Serendipity.NNUE;
 
 import java.io.*;
-import java.util.Objects;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.shawn.games.Serendipity.Chess.*;
 
@@ -29,13 +32,13 @@ public class NNUE
 	private static final int COLOR_STRIDE = 64 * 6;
 	private static final int PIECE_STRIDE = 64;
 
-	static final int HIDDEN_SIZE = 1536;
 	static final int FEATURE_SIZE = 768;
-	static final int OUTPUT_BUCKETS = 8;
-	private static final int DIVISOR = (32 + OUTPUT_BUCKETS - 1) / OUTPUT_BUCKETS;
-	static final int INPUT_BUCKET_SIZE = 7;
+	static final int INPUT_BUCKET_SQUARES = 64;
+
+	// The buckets of raw networks, which do not describe their own architecture
+	static final int DEFAULT_OUTPUT_BUCKETS = 8;
 	// @formatter:off
-	private static final int[] INPUT_BUCKETS = new int[]
+	static final int[] DEFAULT_INPUT_BUCKETS = new int[]
 	{
 			0, 0, 1, 1, 2, 2, 3, 3,
 			4, 4, 4, 4, 5, 5, 5, 5,
@@ -52,82 +55,124 @@ public class NNUE
 	public static final int QA = 255;
 	public static final int QB = 64;
 
-	final short[][] L1Weights;
+	// Both weight matrices are stored flat, row after row, so that an update reads
+	// one contiguous array and a row is found by offset instead of a second lookup
+	final short[] L1Weights;
 	final short[] L1Biases;
-	private final short[][] L2Weights;
+	private final short[] L2Weights;
 	private final short[] outputBiases;
 
-	private static final Inference INFERENCE = InferenceChooser.chooseInference();
+	final int hiddenSize;
+	final int inputBucketCount;
+	private final int[] inputBuckets;
+	private final int outputBuckets;
+	private final int outputBucketDivisor;
 
-	private short toLittleEndian(short input)
-	{
-		return (short) (((input & 0xFF) << 8) | ((input & 0xFF00) >> 8));
-	}
+	final Inference inference;
 
 	public NNUE(String filePath) throws IOException
 	{
-		DataInputStream networkData = new DataInputStream(
-				Objects.requireNonNull(getClass().getResourceAsStream(filePath)));
+		this(NetworkFile.decode(readResource(filePath), filePath), filePath);
+	}
 
-		L1Weights = new short[FEATURE_SIZE * INPUT_BUCKET_SIZE][HIDDEN_SIZE];
+	// The weights are decoded into arrays of their own either way, so a network on
+	// disk is read in one piece like a resource
+	public NNUE(Path filePath) throws IOException
+	{
+		this(NetworkFile.decode(ByteBuffer.wrap(Files.readAllBytes(filePath)), filePath.toString()),
+				filePath.toString());
+	}
 
-		for (int i = 0; i < FEATURE_SIZE * INPUT_BUCKET_SIZE; i++)
+	private static ByteBuffer readResource(String filePath) throws IOException
+	{
+		try (InputStream networkData = NNUE.class.getResourceAsStream(filePath))
 		{
-			for (int j = 0; j < HIDDEN_SIZE; j++)
+			if (networkData == null)
 			{
-				L1Weights[i][j] = toLittleEndian(networkData.readShort());
+				throw new FileNotFoundException("Network " + filePath + " not found");
 			}
+
+			return ByteBuffer.wrap(networkData.readAllBytes());
 		}
+	}
+
+	// The architecture is described by the network file, and the inference kernels
+	// are built for its hidden size
+	private NNUE(NetworkFile networkFile, String filePath) throws IOException
+	{
+		final ShortBuffer networkData = networkFile.weights;
+
+		hiddenSize = networkFile.hiddenSize;
+		inputBucketCount = networkFile.inputBucketCount;
+		inputBuckets = networkFile.inputBuckets;
+		outputBuckets = networkFile.outputBuckets;
+		outputBucketDivisor = (32 + outputBuckets - 1) / outputBuckets;
+		inference = InferenceChooser.chooseInference(hiddenSize);
 
-		L1Biases = new short[HIDDEN_SIZE];
+		L1Weights = new short[FEATURE_SIZE * inputBucketCount * hiddenSize];
+		L1Biases = new short[hiddenSize];
+		L2Weights = new short[outputBuckets * hiddenSize * 2];
+		outputBiases = new short[outputBuckets];
 
-		for (int i = 0; i < HIDDEN_SIZE; i++)
+		if (networkData.remaining() < L1Weights.length + L1Biases.length + L2Weights.length + outputBiases.length)
 		{
-			L1Biases[i] = toLittleEndian(networkData.readShort());
+			throw new EOFException("Network file " + filePath + " is truncated");
 		}
 
-		L2Weights = new short[OUTPUT_BUCKETS][HIDDEN_SIZE * 2];
+		networkData.get(L1Weights);
+		networkData.get(L1Biases);
 
-		for (int i = 0; i < HIDDEN_SIZE * 2; i++)
+		// The output weights are stored input-major, but evaluated one bucket at a time
+		for (int i = 0; i < hiddenSize * 2; i++)
 		{
-			for (int j = 0; j < OUTPUT_BUCKETS; j++)
+			for (int j = 0; j < outputBuckets; j++)
 			{
-				L2Weights[j][i] = toLittleEndian(networkData.readShort());
+				L2Weights[j * hiddenSize * 2 + i] = networkData.get();
 			}
 		}
 
-		outputBiases = new short[OUTPUT_BUCKETS];
-
-		for (int i = 0; i < OUTPUT_BUCKETS; i++)
-		{
-			outputBiases[i] = toLittleEndian(networkData.readShort());
-		}
+		networkData.get(outputBiases);
+	}
 
-		networkData.close();
+	public int getHiddenSize()
+	{
+		return hiddenSize;
 	}
 
-	public static int chooseOutputBucket(Board board)
+	public int chooseOutputBucket(Board board)
 	{
-		return (Long.bitCount(board.getBitboard()) - 2) / DIVISOR;
+		return (Long.bitCount(board.getBitboard()) - 2) / outputBucketDivisor;
 	}
 
 	public static int evaluate(Board board, NNUE network, AccumulatorStack accumulators)
 	{
-		final int chosenBucket = chooseOutputBucket(board);
+		return evaluate(board, network, accumulators, network.inference);
+	}
+
+	public static int evaluate(Board board, NNUE network, AccumulatorStack accumulators, Inference inference)
+	{
+		final int chosenBucket = network.chooseOutputBucket(board);
+
+		final AccumulatorStack.AccumulatorPair accumulatorPair = accumulators.refreshAndGet(board);
+
+		return inference.forward(accumulatorPair.get(board.getSideToMove()).values,
+				accumulatorPair.get(board.getSideToMove().flip()).values, network.L2Weights,
+				chosenBucket * network.hiddenSize * 2, network.outputBiases[chosenBucket]);
+	}
 
-		return INFERENCE.forward(accumulators.refreshAndGet(board), board.getSideToMove(),
-				network.L2Weights[chosenBucket], network.outputBiases[chosenBucket]);
+	int l1Offset(int featureIndex, int kingBucket)
+	{
+		return (kingBucket * FEATURE_SIZE + featureIndex) * hiddenSize;
 	}
 
-	public static int chooseInputBucket(Board board, Side side)
+	public int chooseInputBucket(Board board, Side side)
 	{
-		return side.equals(Side.WHITE) ? INPUT_BUCKETS[board.getKingSquare(side).ordinal()]
-				: INPUT_BUCKETS[board.getKingSquare(side).ordinal() ^ 0b111000];
+		return chooseInputBucket(board.getKingSquare(side), side);
 	}
 
-	public static int chooseInputBucket(Square square, Side side)
+	public int chooseInputBucket(Square square, Side side)
 	{
-		return side.equals(Side.WHITE) ? INPUT_BUCKETS[square.ordinal()] : INPUT_BUCKETS[square.ordinal() ^ 0b111000];
+		return side.equals(Side.WHITE) ? inputBuckets[square.ordinal()] : inputBuckets[square.ordinal() ^ 0b111000];
 	}
 
 	public static int getIndex(Square square, Piece piece, Side perspective)
@@ -139,29 +184,32 @@ public class NNUE
 						+ (square.ordinal() ^ 0b111000);
 	}
 
-	public static int getIndex(final AccumulatorDiff.DiffInfo diff, Side perspective)
+	public static int getIndex(int packedPiece, Side perspective)
 	{
-		return getIndex(diff.square, diff.piece, perspective);
+		return getIndex(AccumulatorDiff.getSquare(packedPiece), AccumulatorDiff.getPiece(packedPiece), perspective);
 	}
 
-	public static boolean requiresRefresh(final AccumulatorDiff diff, Side perspective)
+	public boolean requiresRefresh(final AccumulatorDiff diff, Side perspective)
 	{
-		assert diff.getAddedCount() <= 1 || !diff.getAdded(1).piece.getPieceType().equals(PieceType.KING);
+		final Piece added = AccumulatorDiff.getPiece(diff.getAdded(0));
+
+		assert diff.getAddedCount() <= 1
+				|| !AccumulatorDiff.getPiece(diff.getAdded(1)).getPieceType().equals(PieceType.KING);
 
-		if (!diff.getAdded(0).piece.getPieceType().equals(PieceType.KING))
+		if (!added.getPieceType().equals(PieceType.KING))
 		{
 			return false;
 		}
 
-		if (!diff.getAdded(0).piece.getPieceSide().equals(perspective))
+		if (!added.getPieceSide().equals(perspective))
 		{
 			return false;
 		}
 
-		assert diff.getRemoved(0).piece.getPieceType().equals(PieceType.KING);
+		assert AccumulatorDiff.getPiece(diff.getRemoved(0)).getPieceType().equals(PieceType.KING);
 
-		final Square prevKing = diff.getRemoved(0).square;
-		final Square currKing = diff.getAdded(0).square;
+		final Square prevKing = AccumulatorDiff.getSquare(diff.getRemoved(0));
+		final Square currKing = AccumulatorDiff.getSquare(diff.getAdded(0));
 
 		return chooseInputBucket(prevKing, perspective) != chooseInputBucket(currKing, perspective);
 	}
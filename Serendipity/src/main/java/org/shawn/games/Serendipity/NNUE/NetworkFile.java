@@ -0,0 +1,407 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity.NNUE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+// A network container: a little-endian header describing the architecture and
+// quantization of the weights that follow, and a checksum of the rest of the
+// header and of the stored payload. The weights are either stored as they are, or as zigzag-encoded
+// LEB128 varints that may also be deflated. Files without the header are read
+// as the raw dumps the trainer produces, with the default input and output
+// buckets and a hidden size that follows from the length of the file.
+public class NetworkFile
+{
+	private static final long MAGIC = 0x4555_4E4E_5044_5253L;
+	private static final int VERSION = 3;
+	private static final int FIELD_BYTES = 64;
+	private static final int CHECKSUM_OFFSET = 44;
+	private static final int HEADER_BYTES = FIELD_BYTES + NNUE.INPUT_BUCKET_SQUARES;
+	private static final int MAX_HIDDEN_SIZE = 1 << 14;
+	private static final int HIDDEN_SIZE_ALIGNMENT = 8;
+	private static final int MAX_OUTPUT_BUCKETS = 32;
+	private static final int RAW_PADDING = 64;
+
+	public static final int ENCODING_RAW = 0;
+	public static final int ENCODING_VARINT = 1;
+	public static final int ENCODING_VARINT_DEFLATE = 2;
+
+	final int hiddenSize;
+	final int outputBuckets;
+	final int inputBucketCount;
+	final int[] inputBuckets;
+	final ShortBuffer weights;
+
+	private NetworkFile(int hiddenSize, int outputBuckets, int[] inputBuckets, ShortBuffer weights)
+	{
+		this.hiddenSize = hiddenSize;
+		this.outputBuckets = outputBuckets;
+		this.inputBucketCount = Arrays.stream(inputBuckets).max().getAsInt() + 1;
+		this.inputBuckets = inputBuckets;
+		this.weights = weights;
+	}
+
+	static long valueCount(int hiddenSize, int inputBucketCount, int outputBuckets)
+	{
+		return (long) NNUE.FEATURE_SIZE * inputBucketCount * hiddenSize + hiddenSize
+				+ (long) outputBuckets * hiddenSize * 2 + outputBuckets;
+	}
+
+	private static boolean isValidHiddenSize(long hiddenSize)
+	{
+		return hiddenSize > 0 && hiddenSize <= MAX_HIDDEN_SIZE && hiddenSize % HIDDEN_SIZE_ALIGNMENT == 0;
+	}
+
+	// Trainers pad raw networks to a multiple of 64 bytes, so the hidden size is
+	// the one that leaves less than that over
+	private static NetworkFile decodeRaw(ByteBuffer file, String name) throws IOException
+	{
+		final int[] inputBuckets = NNUE.DEFAULT_INPUT_BUCKETS;
+		final int inputBucketCount = Arrays.stream(inputBuckets).max().getAsInt() + 1;
+		final long values = file.remaining() / Short.BYTES;
+		final long fixedValues = valueCount(0, inputBucketCount, NNUE.DEFAULT_OUTPUT_BUCKETS);
+		final long perHiddenValue = valueCount(1, inputBucketCount, NNUE.DEFAULT_OUTPUT_BUCKETS) - fixedValues;
+		final long hiddenSize = (values - fixedValues) / perHiddenValue;
+
+		if (!isValidHiddenSize(hiddenSize))
+		{
+			throw new EOFException("Network " + name + " is truncated");
+		}
+
+		final int valueCount = (int) valueCount((int) hiddenSize, inputBucketCount, NNUE.DEFAULT_OUTPUT_BUCKETS);
+
+		if (file.remaining() - valueCount * Short.BYTES >= RAW_PADDING)
+		{
+			throw new EOFException("Network " + name + " is truncated");
+		}
+
+		return new NetworkFile((int) hiddenSize, NNUE.DEFAULT_OUTPUT_BUCKETS, inputBuckets,
+				file.asShortBuffer().limit(valueCount));
+	}
+
+	static NetworkFile decode(ByteBuffer file, String name) throws IOException
+	{
+		file.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (file.remaining() < HEADER_BYTES || file.getLong(file.position()) != MAGIC)
+		{
+			return decodeRaw(file, name);
+		}
+
+		final ByteBuffer header = file.slice().order(ByteOrder.LITTLE_ENDIAN);
+		header.getLong();
+
+		if (header.getInt() != VERSION)
+		{
+			throw new IOException("Network " + name + " has an unsupported version");
+		}
+
+		final int encoding = header.getInt();
+		final int featureSize = header.getInt();
+		final int inputBucketCount = header.getInt();
+		final int hiddenSize = header.getInt();
+		final int outputBuckets = header.getInt();
+
+		if (header.getInt() != NNUE.QA || header.getInt() != NNUE.QB || header.getInt() != NNUE.SCALE)
+		{
+			throw new IOException("Network " + name + " has different quantization constants");
+		}
+
+		final int checksum = header.getInt();
+		final int valueCount = header.getInt();
+		final int encodedLength = header.getInt();
+		final long payloadLength = header.getLong();
+		final int[] inputBuckets = new int[NNUE.INPUT_BUCKET_SQUARES];
+
+		for (int i = 0; i < inputBuckets.length; i++)
+		{
+			inputBuckets[i] = header.get();
+		}
+
+		if (featureSize != NNUE.FEATURE_SIZE || !isValidHiddenSize(hiddenSize) || outputBuckets < 1
+				|| outputBuckets > MAX_OUTPUT_BUCKETS || inputBucketCount < 1 || inputBucketCount > inputBuckets.length
+				|| Arrays.stream(inputBuckets).max().getAsInt() != inputBucketCount - 1
+				|| Arrays.stream(inputBuckets).min().getAsInt() < 0
+				|| valueCount != valueCount(hiddenSize, inputBucketCount, outputBuckets))
+		{
+			throw new IOException("Network " + name + " has an unsupported architecture");
+		}
+
+		final ByteBuffer payload = file.slice(file.position() + HEADER_BYTES, file.remaining() - HEADER_BYTES);
+
+		if (payload.remaining() != payloadLength)
+		{
+			throw new EOFException("Network " + name + " is truncated");
+		}
+
+		if (checksum(file.slice(file.position(), HEADER_BYTES), payload) != checksum)
+		{
+			throw new IOException("Network " + name + " is corrupted");
+		}
+
+		// The checksum only catches accidents, so the lengths are bounded before
+		// anything is allocated for them. A varint takes one to three bytes.
+		final boolean varintLengthValid = encodedLength >= valueCount && encodedLength <= 3L * valueCount;
+
+		if ((encoding == ENCODING_RAW && (encodedLength != (long) valueCount * Short.BYTES
+				|| encodedLength != payloadLength))
+				|| (encoding == ENCODING_VARINT && (!varintLengthValid || encodedLength != payloadLength))
+				|| (encoding == ENCODING_VARINT_DEFLATE && !varintLengthValid))
+		{
+			throw new IOException("Network " + name + " is corrupted");
+		}
+
+		final ShortBuffer weights;
+
+		switch (encoding)
+		{
+			case ENCODING_RAW:
+				weights = payload.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+				break;
+			case ENCODING_VARINT:
+				final byte[] encoded = new byte[encodedLength];
+				payload.get(encoded);
+				weights = ShortBuffer.wrap(decodeVarints(encoded, valueCount, name));
+				break;
+			case ENCODING_VARINT_DEFLATE:
+				weights = ShortBuffer.wrap(decodeVarints(inflate(payload, encodedLength, name), valueCount, name));
+				break;
+			default:
+				throw new IOException("Network " + name + " has an unknown encoding");
+		}
+
+		return new NetworkFile(hiddenSize, outputBuckets, inputBuckets, weights);
+	}
+
+	// Covers the header without the checksum itself, followed by the payload
+	private static int checksum(ByteBuffer header, ByteBuffer payload)
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(header.slice(0, CHECKSUM_OFFSET));
+		crc.update(header.slice(CHECKSUM_OFFSET + Integer.BYTES, HEADER_BYTES - CHECKSUM_OFFSET - Integer.BYTES));
+		crc.update(payload.duplicate());
+
+		return (int) crc.getValue();
+	}
+
+	private static byte[] inflate(ByteBuffer payload, int length, String name) throws IOException
+	{
+		final Inflater inflater = new Inflater();
+		final byte[] inflated = new byte[length];
+
+		try
+		{
+			inflater.setInput(payload);
+
+			int inflatedLength = 0;
+
+			while (inflatedLength < length && !inflater.finished() && !inflater.needsInput())
+			{
+				inflatedLength += inflater.inflate(inflated, inflatedLength, length - inflatedLength);
+			}
+
+			if (inflatedLength != length)
+			{
+				throw new EOFException("Network " + name + " is truncated");
+			}
+		}
+
+		catch (DataFormatException e)
+		{
+			throw new IOException("Network " + name + " is corrupted");
+		}
+
+		finally
+		{
+			inflater.end();
+		}
+
+		return inflated;
+	}
+
+	private static short[] decodeVarints(byte[] encoded, int valueCount, String name) throws IOException
+	{
+		final short[] values = new short[valueCount];
+
+		// Quantized weights are small, so usually every value takes one byte
+		if (encoded.length == valueCount)
+		{
+			for (int i = 0; i < valueCount; i++)
+			{
+				final int value = encoded[i];
+
+				if (value < 0)
+				{
+					throw new IOException("Network " + name + " is corrupted");
+				}
+
+				values[i] = (short) ((value >>> 1) ^ -(value & 1));
+			}
+
+			return values;
+		}
+
+		int position = 0;
+
+		for (int i = 0; i < valueCount; i++)
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do
+			{
+				if (position == encoded.length || shift > 14)
+				{
+					throw new IOException("Network " + name + " is corrupted");
+				}
+
+				b = encoded[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+
+			values[i] = (short) ((value >>> 1) ^ -(value & 1));
+		}
+
+		if (position != encoded.length)
+		{
+			throw new IOException("Network " + name + " is corrupted");
+		}
+
+		return values;
+	}
+
+	private static byte[] encodeVarints(ShortBuffer values)
+	{
+		final byte[] encoded = new byte[values.remaining() * 3];
+		int position = 0;
+
+		while (values.hasRemaining())
+		{
+			final short value = values.get();
+			int zigzag = ((value << 1) ^ (value >> 15)) & 0xFFFF;
+
+			while (zigzag >= 0x80)
+			{
+				encoded[position++] = (byte) (zigzag | 0x80);
+				zigzag >>>= 7;
+			}
+
+			encoded[position++] = (byte) zigzag;
+		}
+
+		return Arrays.copyOf(encoded, position);
+	}
+
+	private static byte[] deflate(byte[] data) throws IOException
+	{
+		final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+		final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+		try (DeflaterOutputStream stream = new DeflaterOutputStream(deflated, deflater))
+		{
+			stream.write(data);
+		}
+
+		finally
+		{
+			deflater.end();
+		}
+
+		return deflated.toByteArray();
+	}
+
+	// Writes the network in `in`, either raw or already packed, as a container
+	public static void pack(Path in, Path out, int encoding) throws IOException
+	{
+		final NetworkFile network;
+
+		try (FileChannel channel = FileChannel.open(in, StandardOpenOption.READ))
+		{
+			network = decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), in.toString());
+		}
+
+		final ShortBuffer values = network.weights;
+
+		final int valueCount = values.remaining();
+		final ByteBuffer payload;
+		int encodedLength = valueCount * Short.BYTES;
+
+		if (encoding == ENCODING_RAW)
+		{
+			payload = ByteBuffer.allocate(encodedLength).order(ByteOrder.LITTLE_ENDIAN);
+			payload.asShortBuffer().put(values);
+		}
+
+		else
+		{
+			final byte[] encoded = encodeVarints(values);
+			encodedLength = encoded.length;
+			payload = ByteBuffer.wrap(encoding == ENCODING_VARINT_DEFLATE ? deflate(encoded) : encoded);
+		}
+
+		final ByteBuffer inputBuckets = ByteBuffer.allocate(NNUE.INPUT_BUCKET_SQUARES);
+
+		for (int bucket : network.inputBuckets)
+		{
+			inputBuckets.put((byte) bucket);
+		}
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(MAGIC).putInt(VERSION).putInt(encoding);
+		header.putInt(NNUE.FEATURE_SIZE).putInt(network.inputBucketCount).putInt(network.hiddenSize)
+				.putInt(network.outputBuckets);
+		header.putInt(NNUE.QA).putInt(NNUE.QB).putInt(NNUE.SCALE);
+		header.putInt(0).putInt(valueCount).putInt(encodedLength).putLong(payload.remaining());
+		header.put(inputBuckets.flip());
+		header.clear();
+		header.putInt(CHECKSUM_OFFSET, checksum(header, payload));
+
+		try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (header.hasRemaining())
+			{
+				channel.write(header);
+			}
+
+			while (payload.hasRemaining())
+			{
+				channel.write(payload);
+			}
+		}
+	}
+}
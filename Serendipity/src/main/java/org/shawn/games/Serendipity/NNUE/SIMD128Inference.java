@@ -0,0 +1,52 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity.NNUE;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMDInference with vectors of 128 bits, whatever the preferred width is
+public class SIMD128Inference extends SIMDInference
+{
+	private static final VectorSpecies<Short> SHORT_SPECIES = ShortVector.SPECIES_128;
+	private static final VectorSpecies<Integer> INT_SPECIES = SHORT_SPECIES.vectorShape().withLanes(int.class);
+
+	public SIMD128Inference(int hiddenSize)
+	{
+		super(hiddenSize);
+	}
+
+	public static boolean supports(int hiddenSize)
+	{
+		return hiddenSize % SHORT_SPECIES.length() == 0;
+	}
+
+	@Override
+	protected VectorSpecies<Short> shortSpecies()
+	{
+		return SHORT_SPECIES;
+	}
+
+	@Override
+	protected VectorSpecies<Integer> intSpecies()
+	{
+		return INT_SPECIES;
+	}
+}
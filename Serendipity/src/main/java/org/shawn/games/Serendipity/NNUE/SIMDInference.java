@@ -19,55 +19,82 @@
 
 package org.shawn.games.Serendipity.NNUE;
 
-import static jdk.incubator.vector.VectorOperators.S2I;
-
-import org.shawn.games.Serendipity.Chess.Side;
-
 import jdk.incubator.vector.IntVector;
 import jdk.incubator.vector.ShortVector;
-import jdk.incubator.vector.Vector;
 import jdk.incubator.vector.VectorOperators;
 import jdk.incubator.vector.VectorSpecies;
 
 public class SIMDInference implements Inference
 {
 	private static final VectorSpecies<Short> SHORT_SPECIES = ShortVector.SPECIES_PREFERRED;
-	private static final int UPPERBOUND = SHORT_SPECIES.loopBound(NNUE.HIDDEN_SIZE);
+	private static final VectorSpecies<Integer> INT_SPECIES = SHORT_SPECIES.vectorShape().withLanes(int.class);
 
-	@Override
-	public int forward(AccumulatorStack.AccumulatorPair accumulators, Side side, short[] weights, short bias)
+	private final int hiddenSize;
+
+	// Layers are a whole number of vectors wide, so the loops need no scalar tail
+	public SIMDInference(int hiddenSize)
 	{
-		AccumulatorStack.Accumulator us = accumulators.get(side);
-		AccumulatorStack.Accumulator them = accumulators.get(side.flip());
+		if (hiddenSize % shortSpecies().length() != 0)
+		{
+			throw new IllegalArgumentException("Hidden size " + hiddenSize + " is not a multiple of "
+					+ shortSpecies().length());
+		}
 
-		IntVector sum = IntVector.zero(SHORT_SPECIES.vectorShape().withLanes(int.class));
+		this.hiddenSize = hiddenSize;
+	}
+
+	public static boolean supports(int hiddenSize)
+	{
+		return hiddenSize % SHORT_SPECIES.length() == 0;
+	}
 
-		for (int i = 0; i < UPPERBOUND; i += SHORT_SPECIES.length())
+	// Subclasses change the vector width by returning other constants. The Vector
+	// API only compiles to vector instructions when the species is a constant, so
+	// it must not be kept in a field: the JIT inlines these calls, as the search
+	// only ever uses one kernel
+	protected VectorSpecies<Short> shortSpecies()
+	{
+		return SHORT_SPECIES;
+	}
+
+	protected VectorSpecies<Integer> intSpecies()
+	{
+		return INT_SPECIES;
+	}
+
+	// SCReLU is computed as x * (x * w), where the inner product still fits in 16
+	// bits. Widening to 32 bits reinterprets each pair of lanes as one int lane
+	// instead of converting, which needs no shuffles: the even lane is masked or
+	// sign extended with shifts, and the odd lane is shifted down
+	@Override
+	public int forward(short[] us, short[] them, short[] weights, int weightsOffset, short bias)
+	{
+		final VectorSpecies<Short> species = shortSpecies();
+		final ShortVector zero = ShortVector.zero(species);
+		final ShortVector qa = ShortVector.broadcast(species, NNUE.QA);
+		IntVector sum = IntVector.zero(intSpecies());
+
+		for (int i = 0; i < hiddenSize; i += species.length())
 		{
-			ShortVector usInputs = ShortVector.fromArray(SHORT_SPECIES, us.values, i);
-			ShortVector themInputs = ShortVector.fromArray(SHORT_SPECIES, them.values, i);
-			ShortVector usWeights = ShortVector.fromArray(SHORT_SPECIES, weights, i);
-			ShortVector themWeights = ShortVector.fromArray(SHORT_SPECIES, weights, i + NNUE.HIDDEN_SIZE);
-
-			usInputs = usInputs.max(ShortVector.zero(SHORT_SPECIES)).min(ShortVector.broadcast(SHORT_SPECIES, NNUE.QA));
-			themInputs = themInputs.max(ShortVector.zero(SHORT_SPECIES))
-					.min(ShortVector.broadcast(SHORT_SPECIES, NNUE.QA));
-
-			ShortVector usWeightedTerms = usInputs.mul(usWeights);
-			ShortVector themWeightedTerms = themInputs.mul(themWeights);
-
-			Vector<Integer> usInputsLo = usInputs.convert(S2I, 0);
-			Vector<Integer> usInputsHi = usInputs.convert(S2I, 1);
-			Vector<Integer> themInputsLo = themInputs.convert(S2I, 0);
-			Vector<Integer> themInputsHi = themInputs.convert(S2I, 1);
-
-			Vector<Integer> usWeightedTermsLo = usWeightedTerms.convert(S2I, 0);
-			Vector<Integer> usWeightedTermsHi = usWeightedTerms.convert(S2I, 1);
-			Vector<Integer> themWeightedTermsLo = themWeightedTerms.convert(S2I, 0);
-			Vector<Integer> themWeightedTermsHi = themWeightedTerms.convert(S2I, 1);
-
-			sum = sum.add(usInputsLo.mul(usWeightedTermsLo)).add(usInputsHi.mul(usWeightedTermsHi))
-					.add(themInputsLo.mul(themWeightedTermsLo)).add(themInputsHi.mul(themWeightedTermsHi));
+			final ShortVector usInputs = ShortVector.fromArray(species, us, i).max(zero).min(qa);
+			final ShortVector themInputs = ShortVector.fromArray(species, them, i).max(zero).min(qa);
+			final ShortVector usWeights = ShortVector.fromArray(species, weights, weightsOffset + i);
+			final ShortVector themWeights = ShortVector.fromArray(species, weights,
+					weightsOffset + i + hiddenSize);
+
+			final IntVector usWidened = usInputs.reinterpretAsInts();
+			final IntVector themWidened = themInputs.reinterpretAsInts();
+			final IntVector usProducts = usInputs.mul(usWeights).reinterpretAsInts();
+			final IntVector themProducts = themInputs.mul(themWeights).reinterpretAsInts();
+
+			sum = sum.add(usWidened.and(0xFFFF)
+					.mul(usProducts.lanewise(VectorOperators.LSHL, 16).lanewise(VectorOperators.ASHR, 16)))
+					.add(usWidened.lanewise(VectorOperators.LSHR, 16)
+							.mul(usProducts.lanewise(VectorOperators.ASHR, 16)))
+					.add(themWidened.and(0xFFFF)
+							.mul(themProducts.lanewise(VectorOperators.LSHL, 16).lanewise(VectorOperators.ASHR, 16)))
+					.add(themWidened.lanewise(VectorOperators.LSHR, 16)
+							.mul(themProducts.lanewise(VectorOperators.ASHR, 16)));
 		}
 
 		int eval = sum.reduceLanes(VectorOperators.ADD);
@@ -82,70 +109,139 @@ public class SIMDInference implements Inference
 	}
 
 	@Override
-	public void add(short[] to, final short[] from, final short[] added)
+	public void add(short[] to, final short[] from, final short[] weights, int added)
 	{
-		for (int i = 0; i < UPPERBOUND; i += SHORT_SPECIES.length())
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
 		{
-			final ShortVector fromVector = ShortVector.fromArray(SHORT_SPECIES, from, i);
-			final ShortVector addVector = ShortVector.fromArray(SHORT_SPECIES, added, i);
+			final ShortVector fromVector = ShortVector.fromArray(species, from, i);
+			final ShortVector addVector = ShortVector.fromArray(species, weights, added + i);
 
 			fromVector.add(addVector).intoArray(to, i);
 		}
 	}
 
 	@Override
-	public void sub(short[] to, final short[] from, final short[] removed)
+	public void sub(short[] to, final short[] from, final short[] weights, int removed)
 	{
-		for (int i = 0; i < UPPERBOUND; i += SHORT_SPECIES.length())
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
 		{
-			final ShortVector fromVector = ShortVector.fromArray(SHORT_SPECIES, from, i);
-			final ShortVector subVector = ShortVector.fromArray(SHORT_SPECIES, removed, i);
+			final ShortVector fromVector = ShortVector.fromArray(species, from, i);
+			final ShortVector subVector = ShortVector.fromArray(species, weights, removed + i);
 
 			fromVector.sub(subVector).intoArray(to, i);
 		}
 	}
 
 	@Override
-	public void addSub(short[] to, final short[] from, final short[] added, final short[] subtracted)
+	public void addSub(short[] to, final short[] from, final short[] weights, int added, int subtracted)
 	{
-		for (int i = 0; i < UPPERBOUND; i += SHORT_SPECIES.length())
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
 		{
-			final ShortVector fromVector = ShortVector.fromArray(SHORT_SPECIES, from, i);
-			final ShortVector addVector = ShortVector.fromArray(SHORT_SPECIES, added, i);
-			final ShortVector subVector = ShortVector.fromArray(SHORT_SPECIES, subtracted, i);
+			final ShortVector fromVector = ShortVector.fromArray(species, from, i);
+			final ShortVector addVector = ShortVector.fromArray(species, weights, added + i);
+			final ShortVector subVector = ShortVector.fromArray(species, weights, subtracted + i);
 
 			fromVector.add(addVector).sub(subVector).intoArray(to, i);
 		}
 	}
 
 	@Override
-	public void addSubSub(short[] to, final short[] from, final short[] added, final short[] subtracted1,
-			final short[] subtracted2)
+	public void addSubSub(short[] to, final short[] from, final short[] weights, int added, int subtracted1,
+			int subtracted2)
 	{
-		for (int i = 0; i < UPPERBOUND; i += SHORT_SPECIES.length())
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
 		{
-			final ShortVector fromVector = ShortVector.fromArray(SHORT_SPECIES, from, i);
-			final ShortVector addVector = ShortVector.fromArray(SHORT_SPECIES, added, i);
-			final ShortVector subVector1 = ShortVector.fromArray(SHORT_SPECIES, subtracted1, i);
-			final ShortVector subVector2 = ShortVector.fromArray(SHORT_SPECIES, subtracted2, i);
+			final ShortVector fromVector = ShortVector.fromArray(species, from, i);
+			final ShortVector addVector = ShortVector.fromArray(species, weights, added + i);
+			final ShortVector subVector1 = ShortVector.fromArray(species, weights, subtracted1 + i);
+			final ShortVector subVector2 = ShortVector.fromArray(species, weights, subtracted2 + i);
 
 			fromVector.add(addVector).sub(subVector1).sub(subVector2).intoArray(to, i);
 		}
 	}
 
 	@Override
-	public void addAddSubSub(short[] to, final short[] from, final short[] added1, final short[] added2,
-			final short[] subtracted1, final short[] subtracted2)
+	public void addAddSubSub(short[] to, final short[] from, final short[] weights, int added1, int added2,
+			int subtracted1, int subtracted2)
 	{
-		for (int i = 0; i < UPPERBOUND; i += SHORT_SPECIES.length())
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
 		{
-			final ShortVector fromVector = ShortVector.fromArray(SHORT_SPECIES, from, i);
-			final ShortVector addVector1 = ShortVector.fromArray(SHORT_SPECIES, added1, i);
-			final ShortVector addVector2 = ShortVector.fromArray(SHORT_SPECIES, added2, i);
-			final ShortVector subVector1 = ShortVector.fromArray(SHORT_SPECIES, subtracted1, i);
-			final ShortVector subVector2 = ShortVector.fromArray(SHORT_SPECIES, subtracted2, i);
+			final ShortVector fromVector = ShortVector.fromArray(species, from, i);
+			final ShortVector addVector1 = ShortVector.fromArray(species, weights, added1 + i);
+			final ShortVector addVector2 = ShortVector.fromArray(species, weights, added2 + i);
+			final ShortVector subVector1 = ShortVector.fromArray(species, weights, subtracted1 + i);
+			final ShortVector subVector2 = ShortVector.fromArray(species, weights, subtracted2 + i);
 
 			fromVector.add(addVector1).add(addVector2).sub(subVector1).sub(subVector2).intoArray(to, i);
 		}
 	}
+
+	@Override
+	public void addSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded, int whiteSubtracted, int blackAdded, int blackSubtracted)
+	{
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
+		{
+			ShortVector.fromArray(species, whiteFrom, i)
+					.add(ShortVector.fromArray(species, weights, whiteAdded + i))
+					.sub(ShortVector.fromArray(species, weights, whiteSubtracted + i)).intoArray(whiteTo, i);
+			ShortVector.fromArray(species, blackFrom, i)
+					.add(ShortVector.fromArray(species, weights, blackAdded + i))
+					.sub(ShortVector.fromArray(species, weights, blackSubtracted + i)).intoArray(blackTo, i);
+		}
+	}
+
+	@Override
+	public void addSubSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded, int whiteSubtracted1, int whiteSubtracted2, int blackAdded,
+			int blackSubtracted1, int blackSubtracted2)
+	{
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
+		{
+			ShortVector.fromArray(species, whiteFrom, i)
+					.add(ShortVector.fromArray(species, weights, whiteAdded + i))
+					.sub(ShortVector.fromArray(species, weights, whiteSubtracted1 + i))
+					.sub(ShortVector.fromArray(species, weights, whiteSubtracted2 + i)).intoArray(whiteTo, i);
+			ShortVector.fromArray(species, blackFrom, i)
+					.add(ShortVector.fromArray(species, weights, blackAdded + i))
+					.sub(ShortVector.fromArray(species, weights, blackSubtracted1 + i))
+					.sub(ShortVector.fromArray(species, weights, blackSubtracted2 + i)).intoArray(blackTo, i);
+		}
+	}
+
+	@Override
+	public void addAddSubSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded1, int whiteAdded2, int whiteSubtracted1, int whiteSubtracted2,
+			int blackAdded1, int blackAdded2, int blackSubtracted1, int blackSubtracted2)
+	{
+		final VectorSpecies<Short> species = shortSpecies();
+
+		for (int i = 0; i < hiddenSize; i += species.length())
+		{
+			ShortVector.fromArray(species, whiteFrom, i)
+					.add(ShortVector.fromArray(species, weights, whiteAdded1 + i))
+					.add(ShortVector.fromArray(species, weights, whiteAdded2 + i))
+					.sub(ShortVector.fromArray(species, weights, whiteSubtracted1 + i))
+					.sub(ShortVector.fromArray(species, weights, whiteSubtracted2 + i)).intoArray(whiteTo, i);
+			ShortVector.fromArray(species, blackFrom, i)
+					.add(ShortVector.fromArray(species, weights, blackAdded1 + i))
+					.add(ShortVector.fromArray(species, weights, blackAdded2 + i))
+					.sub(ShortVector.fromArray(species, weights, blackSubtracted1 + i))
+					.sub(ShortVector.fromArray(species, weights, blackSubtracted2 + i)).intoArray(blackTo, i);
+		}
+	}
 }
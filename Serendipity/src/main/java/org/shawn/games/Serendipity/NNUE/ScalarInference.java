@@ -19,8 +19,6 @@
 
 package org.shawn.games.Serendipity.NNUE;
 
-import org.shawn.games.Serendipity.Chess.Side;
-
 public class ScalarInference implements Inference
 {
 	private final static int[] screlu = new int[Short.MAX_VALUE - Short.MIN_VALUE + 1];
@@ -33,6 +31,13 @@ public class ScalarInference implements Inference
 		}
 	}
 
+	private final int hiddenSize;
+
+	public ScalarInference(int hiddenSize)
+	{
+		this.hiddenSize = hiddenSize;
+	}
+
 	private static int screlu(short i)
 	{
 		int v = Math.max(0, Math.min(i, NNUE.QA));
@@ -40,17 +45,15 @@ public class ScalarInference implements Inference
 	}
 
 	@Override
-	public int forward(AccumulatorStack.AccumulatorPair accumulators, Side side, short[] weights, short bias)
+	public int forward(short[] us, short[] them, short[] weights, int weightsOffset, short bias)
 	{
 		int eval = 0;
 
-		AccumulatorStack.Accumulator us = accumulators.get(side);
-		AccumulatorStack.Accumulator them = accumulators.get(side.flip());
-
-		for (int i = 0; i < NNUE.HIDDEN_SIZE; i++)
+		for (int i = 0; i < hiddenSize; i++)
 		{
-			eval += screlu[us.values[i] - (int) Short.MIN_VALUE] * (int) weights[i]
-					+ screlu[them.values[i] - (int) Short.MIN_VALUE] * (int) weights[i + NNUE.HIDDEN_SIZE];
+			eval += screlu[us[i] - (int) Short.MIN_VALUE] * (int) weights[weightsOffset + i]
+					+ screlu[them[i] - (int) Short.MIN_VALUE]
+							* (int) weights[weightsOffset + i + hiddenSize];
 		}
 
 		eval /= NNUE.QA;
@@ -63,49 +66,76 @@ public class ScalarInference implements Inference
 	}
 
 	@Override
-	public void add(short[] to, final short[] from, final short[] added)
+	public void add(short[] to, final short[] from, final short[] weights, int added)
 	{
-		for (int i = 0; i < NNUE.HIDDEN_SIZE; i++)
+		for (int i = 0; i < hiddenSize; i++)
 		{
-			to[i] = (short) (from[i] + added[i]);
+			to[i] = (short) (from[i] + weights[added + i]);
 		}
 	}
 
 	@Override
-	public void sub(short[] to, final short[] from, final short[] removed)
+	public void sub(short[] to, final short[] from, final short[] weights, int removed)
 	{
-		for (int i = 0; i < NNUE.HIDDEN_SIZE; i++)
+		for (int i = 0; i < hiddenSize; i++)
 		{
-			to[i] = (short) (from[i] - removed[i]);
+			to[i] = (short) (from[i] - weights[removed + i]);
 		}
 	}
 
 	@Override
-	public void addSub(short[] to, final short[] from, final short[] added, final short[] subtracted)
+	public void addSub(short[] to, final short[] from, final short[] weights, int added, int subtracted)
 	{
-		for (int i = 0; i < NNUE.HIDDEN_SIZE; i++)
+		for (int i = 0; i < hiddenSize; i++)
 		{
-			to[i] = (short) (from[i] + added[i] - subtracted[i]);
+			to[i] = (short) (from[i] + weights[added + i] - weights[subtracted + i]);
 		}
 	}
 
 	@Override
-	public void addSubSub(short[] to, final short[] from, final short[] added, final short[] subtracted1,
-			final short[] subtracted2)
+	public void addSubSub(short[] to, final short[] from, final short[] weights, int added, int subtracted1,
+			int subtracted2)
 	{
-		for (int i = 0; i < NNUE.HIDDEN_SIZE; i++)
+		for (int i = 0; i < hiddenSize; i++)
 		{
-			to[i] = (short) (from[i] + added[i] - subtracted1[i] - subtracted2[i]);
+			to[i] = (short) (from[i] + weights[added + i] - weights[subtracted1 + i] - weights[subtracted2 + i]);
 		}
 	}
 
 	@Override
-	public void addAddSubSub(short[] to, final short[] from, final short[] added1, final short[] added2,
-			final short[] subtracted1, final short[] subtracted2)
+	public void addAddSubSub(short[] to, final short[] from, final short[] weights, int added1, int added2,
+			int subtracted1, int subtracted2)
 	{
-		for (int i = 0; i < NNUE.HIDDEN_SIZE; i++)
+		for (int i = 0; i < hiddenSize; i++)
 		{
-			to[i] = (short) (from[i] + added1[i] + added2[i] - subtracted1[i] - subtracted2[i]);
+			to[i] = (short) (from[i] + weights[added1 + i] + weights[added2 + i] - weights[subtracted1 + i]
+					- weights[subtracted2 + i]);
 		}
 	}
+
+	@Override
+	public void addSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded, int whiteSubtracted, int blackAdded, int blackSubtracted)
+	{
+		addSub(whiteTo, whiteFrom, weights, whiteAdded, whiteSubtracted);
+		addSub(blackTo, blackFrom, weights, blackAdded, blackSubtracted);
+	}
+
+	@Override
+	public void addSubSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded, int whiteSubtracted1, int whiteSubtracted2, int blackAdded,
+			int blackSubtracted1, int blackSubtracted2)
+	{
+		addSubSub(whiteTo, whiteFrom, weights, whiteAdded, whiteSubtracted1, whiteSubtracted2);
+		addSubSub(blackTo, blackFrom, weights, blackAdded, blackSubtracted1, blackSubtracted2);
+	}
+
+	@Override
+	public void addAddSubSub(short[] whiteTo, final short[] whiteFrom, short[] blackTo, final short[] blackFrom,
+			final short[] weights, int whiteAdded1, int whiteAdded2, int whiteSubtracted1, int whiteSubtracted2,
+			int blackAdded1, int blackAdded2, int blackSubtracted1, int blackSubtracted2)
+	{
+		addAddSubSub(whiteTo, whiteFrom, weights, whiteAdded1, whiteAdded2, whiteSubtracted1, whiteSubtracted2);
+		addAddSubSub(blackTo, blackFrom, weights, blackAdded1, blackAdded2, blackSubtracted1, blackSubtracted2);
+	}
 }
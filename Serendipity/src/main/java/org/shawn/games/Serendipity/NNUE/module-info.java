@@ -21,4 +21,5 @@ module org.shawn.games.Serendipity.NNUE
 {
 	requires jdk.incubator.vector;
 	requires org.apache.commons.lang3;
+	requires jdk.management;
 }
\ No newline at end of file
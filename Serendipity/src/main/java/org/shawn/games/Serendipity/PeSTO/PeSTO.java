@@ -201,7 +201,7 @@ public class PeSTO
 
 	final static int TEMPO = 8;
 
-	final static int MAX_PHASE = KNIGHT_PHASE * 4 + BISHOP_PHASE * 4 + ROOK_PHASE * 4 + QUEEN_PHASE * 2;
+	public final static int MAX_PHASE = KNIGHT_PHASE * 4 + BISHOP_PHASE * 4 + ROOK_PHASE * 4 + QUEEN_PHASE * 2;
 
 	private static int getIndex(Side side, Square square)
 	{
@@ -23,10 +23,13 @@ import java.util.*;
 import java.util.concurrent.BrokenBarrierException;
 
 import org.shawn.games.Serendipity.NNUE.*;
+import org.shawn.games.Serendipity.PeSTO.PeSTO;
 import org.shawn.games.Serendipity.Search.History.History;
 import org.shawn.games.Serendipity.Search.Listener.FinalReport;
 import org.shawn.games.Serendipity.Search.Listener.ISearchListener;
 import org.shawn.games.Serendipity.Search.Listener.SearchReport;
+import org.shawn.games.Serendipity.UCI.BooleanOption;
+import org.shawn.games.Serendipity.UCI.IntegerOption;
 
 import org.shawn.games.Serendipity.Chess.*;
 import org.shawn.games.Serendipity.Chess.move.*;
@@ -42,11 +45,17 @@ public class AlphaBeta implements Runnable
 
 	public static final int MATE_IN_MAX_PLY = MATE_EVAL - MAX_PLY;
 
+	// The lazy fail high in qsearch is off by default until its margin has been
+	// tuned
+	private static final BooleanOption lazyEval = new BooleanOption(false, "LazyEval");
+	private static final IntegerOption lazyEvalMargin = new IntegerOption(900, 0, 3000, "LazyEvalMargin");
+
 	public final int[][] reduction = new int[MAX_PLY + 1][MAX_PLY + 1];
 
 	private int nmpMinPly;
 
 	private AccumulatorStack accumulators;
+	private final TranspositionTable.Entry ttEntry = new TranspositionTable.Entry();
 
 	private final ThreadData threadData;
 	private final SharedThreadData sharedThreadData;
@@ -108,7 +117,14 @@ public class AlphaBeta implements Runnable
 
 	public int evaluate(Board board)
 	{
-		int v = NNUE.evaluate(board, sharedThreadData.network, accumulators);
+		final long key = board.getIncrementalHashKey();
+		int v = threadData.evalCache.probe(key);
+
+		if (v == EvalCache.NONE)
+		{
+			v = NNUE.evaluate(board, sharedThreadData.network, accumulators);
+			threadData.evalCache.store(key, v);
+		}
 
 		final int material = Long
 				.bitCount(board.getBitboard(Piece.WHITE_BISHOP) | board.getBitboard(Piece.BLACK_BISHOP)) * 3
@@ -170,8 +186,22 @@ public class AlphaBeta implements Runnable
 		boolean isPV = beta - alpha > 1;
 		final int oldAlpha = alpha;
 
-		TranspositionTable.Entry currentMoveEntry = sharedThreadData.tt.probe(board.getIncrementalHashKey());
+		// With a per-thread qsearch table, qsearch results stay in it and the shared
+		// table is only read, for the entries left by the main search
+		final TranspositionTable tt = threadData.qsTT != null ? threadData.qsTT : sharedThreadData.tt;
+		final TranspositionTable.Statistics ttStats = threadData.qsTT != null ? threadData.qsTTStats
+				: threadData.ttStats;
+		TranspositionTable.Entry currentMoveEntry = tt.probe(board.getIncrementalHashKey(), ttEntry);
+
+		ttStats.recordProbe(currentMoveEntry);
+
+		if (!currentMoveEntry.hit() && tt != sharedThreadData.tt)
+		{
+			currentMoveEntry = sharedThreadData.tt.probe(board.getIncrementalHashKey(), ttEntry);
+			this.threadData.ttStats.recordProbe(currentMoveEntry);
+		}
 		boolean ttHit = currentMoveEntry.hit() && currentMoveEntry.verifySignature(board.getIncrementalHashKey());
+
 		final Move ttMove = ttHit ? currentMoveEntry.getMove() : null;
 
 		if (!isPV && ttHit && currentMoveEntry.getNodeType() != TranspositionTable.NODETYPE_NONE)
@@ -229,10 +259,24 @@ public class AlphaBeta implements Runnable
 
 			else
 			{
+				// A PeSTO score far above beta fails high as the stand pat would, without
+				// paying for the network
+				if (!isPV && lazyEval.get())
+				{
+					final int pestoEval = PeSTO.evaluate(board) / PeSTO.MAX_PHASE;
+
+					threadData.standPats++;
+
+					if (pestoEval >= beta + lazyEvalMargin.get())
+					{
+						threadData.lazyStandPats++;
+						return beta;
+					}
+				}
+
 				bestScore = sse.staticEval = evaluate(board);
-				sharedThreadData.tt.write(currentMoveEntry, board.getIncrementalHashKey(),
-						TranspositionTable.NODETYPE_NONE, TranspositionTable.DEPTH_NONE, VALUE_NONE, null,
-						sse.staticEval);
+				ttStats.recordWrite(tt.write(board.getIncrementalHashKey(), TranspositionTable.NODETYPE_NONE,
+						TranspositionTable.DEPTH_NONE, VALUE_NONE, null, sse.staticEval));
 			}
 
 			alpha = Math.max(alpha, sse.staticEval);
@@ -267,7 +311,7 @@ public class AlphaBeta implements Runnable
 				continue;
 			}
 
-			AccumulatorDiff diff = board.doMove(move);
+			AccumulatorDiff diff = board.doMove(move, accumulators.nextDiff());
 			accumulators.push(board, move, diff);
 			sse.move = move;
 			sse.continuationHistory = threadData.continuationHistories.get(board, sse.move);
@@ -293,16 +337,16 @@ public class AlphaBeta implements Runnable
 
 		if (alpha >= oldAlpha)
 		{
-			sharedThreadData.tt.write(currentMoveEntry, board.getIncrementalHashKey(),
+			ttStats.recordWrite(tt.write(board.getIncrementalHashKey(),
 					TranspositionTable.NODETYPE_LOWERBOUND, TranspositionTable.DEPTH_QS, bestScore, bestMove,
-					sse.staticEval);
+					sse.staticEval));
 		}
 
 		else
 		{
-			sharedThreadData.tt.write(currentMoveEntry, board.getIncrementalHashKey(),
+			ttStats.recordWrite(tt.write(board.getIncrementalHashKey(),
 					TranspositionTable.NODETYPE_UPPERBOUND, TranspositionTable.DEPTH_QS, bestScore, ttMove,
-					sse.staticEval);
+					sse.staticEval));
 		}
 
 		return bestScore;
@@ -372,14 +416,23 @@ public class AlphaBeta implements Runnable
 			depth = MAX_PLY - 1;
 		}
 
-		TranspositionTable.Entry currentMoveEntry = sharedThreadData.tt.probe(board.getIncrementalHashKey());
+		TranspositionTable.Entry currentMoveEntry = sharedThreadData.tt.probe(board.getIncrementalHashKey(), ttEntry);
 
 		sse.ttHit = currentMoveEntry.hit() && currentMoveEntry.verifySignature(board.getIncrementalHashKey());
 
-		if (!inSingularSearch && !isPV && sse.ttHit && currentMoveEntry.getDepth() >= depth)
+		// The entry is reused by every probe of this thread, so unpack it before
+		// searching any child node
+		final int ttDepth = currentMoveEntry.getDepth();
+		final int ttNodeType = currentMoveEntry.getNodeType();
+		final int ttValue = currentMoveEntry.getEvaluation();
+		final int ttStaticEval = currentMoveEntry.getStaticEval();
+
+		this.threadData.ttStats.recordProbe(currentMoveEntry);
+
+		if (!inSingularSearch && !isPV && sse.ttHit && ttDepth >= depth)
 		{
-			eval = currentMoveEntry.getEvaluation();
-			switch (currentMoveEntry.getNodeType())
+			eval = ttValue;
+			switch (ttNodeType)
 			{
 				case TranspositionTable.NODETYPE_EXACT:
 					return eval;
@@ -411,12 +464,12 @@ public class AlphaBeta implements Runnable
 		{
 			if (sse.ttHit)
 			{
-				eval = sse.staticEval = currentMoveEntry.getStaticEval();
+				eval = sse.staticEval = ttStaticEval;
 
-				if (currentMoveEntry.getEvaluation() != VALUE_NONE)
+				if (ttValue != VALUE_NONE)
 				{
-					eval = currentMoveEntry.getEvaluation();
-					switch (currentMoveEntry.getNodeType())
+					eval = ttValue;
+					switch (ttNodeType)
 					{
 						case TranspositionTable.NODETYPE_EXACT:
 							break;
@@ -441,9 +494,9 @@ public class AlphaBeta implements Runnable
 			{
 				eval = sse.staticEval = evaluate(board);
 
-				sharedThreadData.tt.write(currentMoveEntry, board.getIncrementalHashKey(),
+				threadData.ttStats.recordWrite(sharedThreadData.tt.write(board.getIncrementalHashKey(),
 						TranspositionTable.NODETYPE_NONE, TranspositionTable.DEPTH_NONE, VALUE_NONE, null,
-						sse.staticEval);
+						sse.staticEval));
 			}
 		}
 
@@ -578,12 +631,12 @@ public class AlphaBeta implements Runnable
 			int extension = 0;
 
 			if (!inSingularSearch && ply > 0 && sse.ttHit && move.equals(ttMove) && depth >= 4
-					&& Math.abs(currentMoveEntry.getEvaluation()) < MATE_IN_MAX_PLY
-					&& (currentMoveEntry.getNodeType() == TranspositionTable.NODETYPE_EXACT
-							|| currentMoveEntry.getNodeType() == TranspositionTable.NODETYPE_LOWERBOUND)
-					&& currentMoveEntry.getDepth() > depth - 4)
+					&& Math.abs(ttValue) < MATE_IN_MAX_PLY
+					&& (ttNodeType == TranspositionTable.NODETYPE_EXACT
+							|| ttNodeType == TranspositionTable.NODETYPE_LOWERBOUND)
+					&& ttDepth > depth - 4)
 			{
-				int singularBeta = currentMoveEntry.getEvaluation() - 2 * depth;
+				int singularBeta = ttValue - 2 * depth;
 				int singularDepth = depth / 2;
 				int moveCountBackup = sse.moveCount;
 
@@ -628,7 +681,7 @@ public class AlphaBeta implements Runnable
 				r -= history / 9000;
 			}
 
-			AccumulatorDiff diff = board.doMove(move);
+			AccumulatorDiff diff = board.doMove(move, accumulators.nextDiff());
 			accumulators.push(board, move, diff);
 			sse.move = move;
 			sse.continuationHistory = threadData.continuationHistories.get(board, sse.move);
@@ -739,20 +792,20 @@ public class AlphaBeta implements Runnable
 		{
 			if (alpha >= beta)
 			{
-				sharedThreadData.tt.write(currentMoveEntry, board.getIncrementalHashKey(),
-						TranspositionTable.NODETYPE_LOWERBOUND, depth, bestValue, bestMove, sse.staticEval);
+				threadData.ttStats.recordWrite(sharedThreadData.tt.write(board.getIncrementalHashKey(),
+						TranspositionTable.NODETYPE_LOWERBOUND, depth, bestValue, bestMove, sse.staticEval));
 			}
 
 			else if (alpha == oldAlpha)
 			{
-				sharedThreadData.tt.write(currentMoveEntry, board.getIncrementalHashKey(),
-						TranspositionTable.NODETYPE_UPPERBOUND, depth, bestValue, ttMove, sse.staticEval);
+				threadData.ttStats.recordWrite(sharedThreadData.tt.write(board.getIncrementalHashKey(),
+						TranspositionTable.NODETYPE_UPPERBOUND, depth, bestValue, ttMove, sse.staticEval));
 			}
 
 			else if (alpha > oldAlpha)
 			{
-				sharedThreadData.tt.write(currentMoveEntry, board.getIncrementalHashKey(),
-						TranspositionTable.NODETYPE_EXACT, depth, bestValue, bestMove, sse.staticEval);
+				threadData.ttStats.recordWrite(sharedThreadData.tt.write(board.getIncrementalHashKey(),
+						TranspositionTable.NODETYPE_EXACT, depth, bestValue, bestMove, sse.staticEval));
 			}
 		}
 
@@ -884,6 +937,31 @@ public class AlphaBeta implements Runnable
 		return this.threadData.nodes.get();
 	}
 
+	public TranspositionTable.Statistics getTTStats()
+	{
+		return this.threadData.ttStats;
+	}
+
+	public TranspositionTable.Statistics getQSTTStats()
+	{
+		return this.threadData.qsTTStats;
+	}
+
+	public EvalCache getEvalCache()
+	{
+		return this.threadData.evalCache;
+	}
+
+	public long getStandPats()
+	{
+		return this.threadData.standPats;
+	}
+
+	public long getLazyStandPats()
+	{
+		return this.threadData.lazyStandPats;
+	}
+
 	public void reset()
 	{
 		this.ss = new SearchStack(MAX_PLY);
@@ -933,6 +1011,7 @@ public class AlphaBeta implements Runnable
 			}
 
 			prepareThreadAndDoIterativeDeepening();
+			this.sharedThreadData.searching.decrementAndGet();
 		}
 	}
 
@@ -940,6 +1019,16 @@ public class AlphaBeta implements Runnable
 	{
 		this.nmpMinPly = 0;
 		this.threadData.nodes.set(0);
+		this.threadData.ttStats.reset();
+		this.threadData.qsTTStats.reset();
+		this.threadData.evalCache.resetStatistics();
+		this.threadData.standPats = 0;
+		this.threadData.lazyStandPats = 0;
+
+		if (this.threadData.qsTT != null)
+		{
+			this.threadData.qsTT.newSearch();
+		}
 		this.ss = new SearchStack(MAX_PLY);
 		this.sharedThreadData.stopped.set(false);
 		this.accumulators = new AccumulatorStack(sharedThreadData.network);
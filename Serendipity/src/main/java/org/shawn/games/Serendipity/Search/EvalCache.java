@@ -0,0 +1,69 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity.Search;
+
+// Raw network outputs of recently evaluated positions. Each search thread owns
+// one, so entries are read and written without any synchronization
+public class EvalCache
+{
+	public static final int NONE = Integer.MIN_VALUE;
+
+	private static final int SIZE = 1 << 16;
+
+	private final long[] keys;
+	private final int[] evals;
+
+	public long probes;
+	public long hits;
+
+	public EvalCache()
+	{
+		this.keys = new long[SIZE];
+		this.evals = new int[SIZE];
+	}
+
+	public int probe(long key)
+	{
+		final int index = (int) key & (SIZE - 1);
+
+		probes++;
+
+		if (keys[index] != key)
+		{
+			return NONE;
+		}
+
+		hits++;
+		return evals[index];
+	}
+
+	public void store(long key, int eval)
+	{
+		final int index = (int) key & (SIZE - 1);
+
+		keys[index] = key;
+		evals[index] = eval;
+	}
+
+	public void resetStatistics()
+	{
+		probes = hits = 0;
+	}
+}
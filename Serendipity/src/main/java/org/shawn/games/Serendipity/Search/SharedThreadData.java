@@ -21,6 +21,7 @@ package org.shawn.games.Serendipity.Search;
 
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.shawn.games.Serendipity.NNUE.NNUE;
 
@@ -28,16 +29,18 @@ public class SharedThreadData
 {
 	final NNUE network;
 	final AtomicBoolean stopped;
+	final AtomicInteger searching;
 	final TranspositionTable tt;
 	final CyclicBarrier endBarrier;
 	final CyclicBarrier startBarrier;
 
 	public SharedThreadData(TranspositionTable tt, CyclicBarrier startBarrier, CyclicBarrier endBarrier, NNUE network,
-			AtomicBoolean stopped)
+			AtomicBoolean stopped, AtomicInteger searching)
 	{
 		this.tt = tt;
 		this.network = network;
 		this.stopped = stopped;
+		this.searching = searching;
 		this.endBarrier = endBarrier;
 		this.startBarrier = startBarrier;
 	}
@@ -42,6 +42,12 @@ public class ThreadData
 	int selDepth;
 	final int id;
 	AtomicLong nodes;
+	final TranspositionTable.Statistics ttStats;
+	final TranspositionTable.Statistics qsTTStats;
+	TranspositionTable qsTT;
+	final EvalCache evalCache;
+	long standPats;
+	long lazyStandPats;
 
 	public static class MainThreadData
 	{
@@ -70,6 +76,9 @@ public class ThreadData
 		this.pv = new Move[AlphaBeta.MAX_PLY + 1][AlphaBeta.MAX_PLY + 1];
 		this.mainThreadData = mainThreadData;
 		this.nodes = new AtomicLong(0);
+		this.ttStats = new TranspositionTable.Statistics();
+		this.qsTTStats = new TranspositionTable.Statistics();
+		this.evalCache = new EvalCache();
 	}
 
 	public ThreadData(int id)
@@ -26,6 +26,7 @@ import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.shawn.games.Serendipity.NNUE.NNUE;
 import org.shawn.games.Serendipity.Search.Listener.ISearchListener;
@@ -38,6 +39,7 @@ public class ThreadManager
 	List<ThreadData> threadData;
 	List<AlphaBeta> threads;
 	int threadsCount;
+	int qsHashSize;
 
 	CyclicBarrier startBarrier;
 	CyclicBarrier endBarrier;
@@ -45,9 +47,17 @@ public class ThreadManager
 
 	AtomicBoolean stopped;
 
+	// Number of threads that have been started on the current search and have not
+	// finished it yet
+	AtomicInteger searching;
+
 	TranspositionTable tt;
 	NNUE network;
 
+	// The per-thread qsearch tables outlive init, so that ucinewgame ages them like
+	// the shared table instead of allocating new ones
+	final List<TranspositionTable> qsTTs = new ArrayList<>();
+
 	public void reinit(int threadsCount)
 	{
 		init(threadsCount, tt, network);
@@ -58,6 +68,18 @@ public class ThreadManager
 		init(threadsCount, tt, network);
 	}
 
+	public void reinitQSHash(int qsHashSize)
+	{
+		if (qsHashSize != this.qsHashSize && !qsTTs.isEmpty())
+		{
+			qsTTs.clear();
+			System.gc();
+		}
+
+		this.qsHashSize = qsHashSize;
+		init(threadsCount, tt, network);
+	}
+
 	public void init(int threadsCount, TranspositionTable tt, NNUE network)
 	{
 		if (this.threads != null)
@@ -77,12 +99,14 @@ public class ThreadManager
 		pool = Executors.newFixedThreadPool(this.threadsCount);
 
 		this.stopped = new AtomicBoolean(false);
+		this.searching = new AtomicInteger(0);
 		final ArrayList<ISearchListener> listeners = new ArrayList<>();
 
 		startBarrier = new CyclicBarrier(this.threadsCount + 1);
 		endBarrier = new CyclicBarrier(this.threadsCount + 1);
 
-		final SharedThreadData sharedData = new SharedThreadData(tt, startBarrier, endBarrier, network, this.stopped);
+		final SharedThreadData sharedData = new SharedThreadData(tt, startBarrier, endBarrier, network, this.stopped,
+				this.searching);
 		final ThreadData.MainThreadData mainThreadData = new ThreadData.MainThreadData(null, listeners, threads);
 
 		threadData.add(new ThreadData(0, mainThreadData));
@@ -92,6 +116,25 @@ public class ThreadManager
 			threadData.add(new ThreadData(i));
 		}
 
+		if (qsHashSize > 0)
+		{
+			while (qsTTs.size() < threadsCount)
+			{
+				qsTTs.add(new TranspositionTable(qsHashSize));
+			}
+
+			while (qsTTs.size() > threadsCount)
+			{
+				qsTTs.remove(qsTTs.size() - 1);
+			}
+
+			for (int i = 0; i < threadsCount; i++)
+			{
+				qsTTs.get(i).newSearch();
+				threadData.get(i).qsTT = qsTTs.get(i);
+			}
+		}
+
 		listeners.add(new UCIListener());
 
 		for (int i = 0; i < this.threadsCount; i++)
@@ -103,6 +146,8 @@ public class ThreadManager
 
 	public void initThreads(Board board, Limits limits)
 	{
+		tt.newSearch();
+
 		for (AlphaBeta thread : threads)
 		{
 			thread.setBoard(board);
@@ -124,6 +169,7 @@ public class ThreadManager
 		}
 
 		initThreads(board, limits);
+		this.searching.set(this.threadsCount);
 
 		try
 		{
@@ -155,6 +201,35 @@ public class ThreadManager
 		return nodes;
 	}
 
+	public TranspositionTable.Statistics getTTStats()
+	{
+		final TranspositionTable.Statistics stats = new TranspositionTable.Statistics();
+
+		for (AlphaBeta thread : threads)
+		{
+			stats.add(thread.getTTStats());
+		}
+
+		return stats;
+	}
+
+	public boolean isSearching()
+	{
+		return this.searching.get() > 0;
+	}
+
+	public TranspositionTable.Statistics getQSTTStats()
+	{
+		final TranspositionTable.Statistics stats = new TranspositionTable.Statistics();
+
+		for (AlphaBeta thread : threads)
+		{
+			stats.add(thread.getQSTTStats());
+		}
+
+		return stats;
+	}
+
 	public AlphaBeta getMainThread()
 	{
 		return threads.get(0);
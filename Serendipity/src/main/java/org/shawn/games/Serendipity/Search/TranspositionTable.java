@@ -19,9 +19,15 @@
 
 package org.shawn.games.Serendipity.Search;
 
-import java.util.Arrays;
-
-import org.shawn.games.Serendipity.Chess.Square;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+
+import org.shawn.games.Serendipity.Chess.Board;
 import org.shawn.games.Serendipity.Chess.move.*;
 
 public class TranspositionTable
@@ -35,42 +41,65 @@ public class TranspositionTable
 	public static final int DEPTH_NONE = -3;
 	public static final int DEPTH_QS = -1;
 
-	public class Entry
-	{
-		private final int signature;
-		private final int depth;
-		private final int type;
-		private final int evaluation;
-		private final int staticEval;
-		private final Move move;
-		private final boolean hit;
+	// Decoded TT moves are shared instances, so that a probe never allocates. The
+	// search only reads the TT move and never assigns it an ordering score.
+	private static final Move[] MOVES = new Move[1 << 16];
 
-		public Entry(short fragment1, long fragment2)
+	static
+	{
+		for (int from = 0; from < 64; from++)
 		{
-			this(fragment1 & 0b11, (fragment1 >>> 8) + DEPTH_OFFSET, (int) (fragment2 & 0xFFFF),
-					(int) (fragment2 & 0xFFFF0000) >> 16, (short) ((fragment2 & 0xFFFF00000000L) >>> 32),
-					(int) (fragment2 >> 48), (fragment1 != 0) && (fragment2 != 0));
+			for (int to = 0; to < 64; to++)
+			{
+				final int bytes = (from << 6) | to;
+
+				MOVES[bytes] = Move.fromBytes(bytes);
+
+				for (int promotion = 0; promotion < 4; promotion++)
+				{
+					final int promotionBytes = bytes | ((0b1000 | promotion) << 12);
+
+					MOVES[promotionBytes] = Move.fromBytes(promotionBytes);
+				}
+			}
 		}
 
-		public Entry(int nodeType, int depth, int signature, int move, int staticEval, int evaluation, boolean hit)
+		MOVES[0] = null;
+	}
+
+	public static class Entry
+	{
+		private long key;
+		private int depth;
+		private int type;
+		private int evaluation;
+		private int staticEval;
+		private int move;
+		private boolean hit;
+		private int mismatches;
+
+		private Entry load(long key, long data, int mismatches)
 		{
-			this.signature = signature;
-			this.depth = depth;
-			this.type = nodeType;
-			this.move = move == 0 ? null : Move.fromBytes(move);
-			this.evaluation = evaluation;
-			this.staticEval = staticEval;
-			this.hit = hit;
+			this.key = key;
+			this.depth = depthOf(data) + DEPTH_OFFSET;
+			this.type = nodeTypeOf(data);
+			this.move = (int) ((data >>> 16) & 0xFFFF);
+			this.staticEval = (short) (data >>> 32);
+			this.evaluation = (short) (data >>> 48);
+			this.hit = depthOf(data) != 0;
+			this.mismatches = mismatches;
+
+			return this;
 		}
 
 		public long getSignature()
 		{
-			return signature;
+			return key;
 		}
 
 		public boolean verifySignature(long signature)
 		{
-			return (int) (signature >>> 48) == this.signature;
+			return signature == this.key;
 		}
 
 		public int getDepth()
@@ -95,7 +124,7 @@ public class TranspositionTable
 
 		public Move getMove()
 		{
-			return move;
+			return MOVES[move];
 		}
 
 		public boolean hit()
@@ -104,106 +133,623 @@ public class TranspositionTable
 		}
 	}
 
-	private int size;
-	private int mask;
+	// Keeps the counters of one thread off the cache lines of objects allocated
+	// before them. Superclass fields are always laid out first.
+	static class StatisticsPadding
+	{
+		long p0, p1, p2, p3, p4, p5, p6, p7;
+	}
 
-	// depth (0-255): 8 bits
-	// unused: 5 bits
-	// ttPV: 1 bit
-	// nodeType: 2 bits
+	// Per-thread counters, padded on both sides so that threads never share a cache
+	// line to count.
+	//
+	// mismatches counts occupied entries that a probe compared and rejected for
+	// their signature, and collisions counts the probes that missed although their
+	// cluster held other positions.
+	public static class Statistics extends StatisticsPadding
+	{
+		public long probes;
+		public long hits;
+		public long mismatches;
+		public long collisions;
+		public long writes;
+		public long evictions;
+		public long deepEvictions;
+
+		long q0, q1, q2, q3, q4, q5, q6, q7;
+
+		void recordProbe(Entry entry)
+		{
+			probes++;
+			hits += entry.hit ? 1 : 0;
+			mismatches += entry.mismatches;
+			collisions += !entry.hit && entry.mismatches != 0 ? 1 : 0;
+		}
+
+		void recordWrite(int outcome)
+		{
+			writes++;
+			evictions += outcome >= WRITE_EVICTED ? 1 : 0;
+			deepEvictions += outcome == WRITE_EVICTED_DEEPER ? 1 : 0;
+		}
 
-	private short[] data1;
+		public void add(Statistics other)
+		{
+			probes += other.probes;
+			hits += other.hits;
+			mismatches += other.mismatches;
+			collisions += other.collisions;
+			writes += other.writes;
+			evictions += other.evictions;
+			deepEvictions += other.deepEvictions;
+		}
 
+		public void reset()
+		{
+			probes = hits = mismatches = collisions = writes = evictions = deepEvictions = 0;
+		}
+	}
+
+	// What a write did to its cluster: kept a deeper entry of the same position,
+	// filled an empty slot, replaced the same position, or evicted another position
+	private static final int WRITE_KEPT = 0;
+	private static final int WRITE_EMPTY = 1;
+	private static final int WRITE_UPDATED = 2;
+	private static final int WRITE_EVICTED = 3;
+	private static final int WRITE_EVICTED_DEEPER = 4;
+
+	private long size;
+	private int generation;
+
+	// A cluster holds CLUSTER_SIZE entries of two longs each and fills exactly one
+	// cache line, as every chunk starts on a cache line boundary. The first long of
+	// an entry is its data, the second is the key XORed with the data.
+	//
+	// data:
 	// evaluation: 16 bits
 	// staticEval: 16 bits
 	// move: 16 bits
-	// signature: 16 bits
+	// depth (0-255): 8 bits
+	// generation: 5 bits
+	// ttPV: 1 bit
+	// nodeType: 2 bits
+	//
+	// The two longs are written without locking, so a concurrent reader may see the
+	// data of one write and the check of another. Such a pair no longer XORs back to
+	// the probed key and is treated as a miss, so torn entries are never returned.
+	//
+	// The clusters live off-heap in direct buffers of up to 2^CHUNK_SHIFT clusters
+	// each (256 MiB), so the table is indexed by long, is not capped by the maximum
+	// array length, and is never scanned or moved by the garbage collector.
+
+	private ByteBuffer[] chunks;
+
+	private static final int CLUSTER_SIZE = 4;
+	private static final int ENTRY_BYTES = 2 * Long.BYTES;
+	private static final int CLUSTER_BYTES = CLUSTER_SIZE * ENTRY_BYTES;
+	private static final int CACHE_LINE_BYTES = 64;
+
+	private static final int CHUNK_SHIFT = 22;
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private static final long STATS_SAMPLE_CLUSTERS = 1 << 16;
+
+	private static final ByteBuffer ZEROES = ByteBuffer.allocateDirect(1 << 20);
+
+	// Saved tables start with a header of HEADER_BYTES, followed by the raw clusters.
+	// Mappings start on a page, so the header size keeps loaded clusters aligned too.
+	//
+	// magic: 8 bytes, also rejects files written with a different byte order
+	// format version: 4 bytes
+	// generation: 4 bytes
+	// Zobrist seed: 8 bytes
+	// cluster count: 8 bytes
+	private static final long FILE_MAGIC = 0x5454_5044_5245_5300L;
+	private static final int FILE_VERSION = 1;
+	private static final int HEADER_BYTES = 64;
+
+	private static final int GENERATION_SHIFT = 3;
+	private static final int GENERATION_CYCLE = 1 << 5;
+	private static final int GENERATION_MASK = GENERATION_CYCLE - 1;
+
+	public TranspositionTable(int size)
+	{
+		resize(size, 1);
+	}
 
-	private long[] data2;
+	private ByteBuffer chunk(long cluster)
+	{
+		return chunks[(int) (cluster >>> CHUNK_SHIFT)];
+	}
 
-	private static final int ENTRY_SIZE = 10;
+	private static int offset(long cluster)
+	{
+		return (int) (cluster & CHUNK_MASK) * CLUSTER_BYTES;
+	}
 
-	public TranspositionTable(int size)
+	// Maps the key onto [0, size) by taking the high half of the unsigned 128-bit
+	// product, which works for any cluster count
+	private long index(long hash)
+	{
+		return Math.multiplyHigh(hash, size) + ((hash >> 63) & size);
+	}
+
+	private static int depthOf(long data)
+	{
+		return (int) (data >>> 8) & 0xFF;
+	}
+
+	private static int nodeTypeOf(long data)
+	{
+		return (int) data & 0b11;
+	}
+
+	private static int generationOf(long data)
 	{
-		size *= 1048576 / ENTRY_SIZE;
+		return (int) (data >>> GENERATION_SHIFT) & GENERATION_MASK;
+	}
 
-		this.size = Integer.highestOneBit(size);
-		this.mask = this.size - 1;
-		this.data1 = new short[this.size];
-		this.data2 = new long[this.size];
+	private int relativeAge(long data)
+	{
+		return (GENERATION_CYCLE + generation - generationOf(data)) & GENERATION_MASK;
 	}
 
-	public Entry probe(long hash)
+	private int replacementScore(long data)
 	{
-		final short fragment1 = data1[(int) (hash & mask)];
-		final long fragment2 = data2[(int) (hash & mask)];
+		return depthOf(data) + (nodeTypeOf(data) == NODETYPE_EXACT ? 2 : 0) - 8 * relativeAge(data);
+	}
+
+	private static void store(ByteBuffer chunk, int entry, long hash, long data)
+	{
+		chunk.putLong(entry, data);
+		chunk.putLong(entry + Long.BYTES, hash ^ data);
+	}
+
+	// Called on every go and ucinewgame; older generations are replaced first, so
+	// the table never needs to be cleared between games
+	public void newSearch()
+	{
+		generation = (generation + 1) & GENERATION_MASK;
+	}
+
+	public Entry probe(long hash, Entry entry)
+	{
+		final long cluster = index(hash);
+		final ByteBuffer chunk = chunk(cluster);
+		final int offset = offset(cluster);
+		int mismatches = 0;
+
+		for (int i = 0; i < CLUSTER_SIZE; i++)
+		{
+			final int slot = offset + i * ENTRY_BYTES;
+			final long data = chunk.getLong(slot);
+
+			if (depthOf(data) == 0)
+			{
+				continue;
+			}
+
+			if ((data ^ chunk.getLong(slot + Long.BYTES)) == hash)
+			{
+				if (generationOf(data) != generation)
+				{
+					store(chunk, slot, hash, (data & ~((long) GENERATION_MASK << GENERATION_SHIFT))
+							| (generation << GENERATION_SHIFT));
+				}
+
+				return entry.load(hash, data, mismatches);
+			}
+
+			mismatches++;
+		}
+
+		return entry.load(0L, 0L, mismatches);
+	}
+
+	public int write(long hash, int nodeType, int depth, int evaluation, Move move, int staticEval)
+	{
+		final long cluster = index(hash);
+		final ByteBuffer chunk = chunk(cluster);
+		final int offset = offset(cluster);
+
+		int replace = offset;
+		int replaceScore = Integer.MAX_VALUE;
+		int outcome = WRITE_EVICTED;
+
+		for (int i = 0; i < CLUSTER_SIZE; i++)
+		{
+			final int slot = offset + i * ENTRY_BYTES;
+			final long data = chunk.getLong(slot);
+
+			if (depthOf(data) == 0)
+			{
+				replace = slot;
+				outcome = WRITE_EMPTY;
+				break;
+			}
+
+			if ((data ^ chunk.getLong(slot + Long.BYTES)) == hash)
+			{
+				if (nodeType != NODETYPE_EXACT && depth <= depthOf(data) + DEPTH_OFFSET - 4)
+				{
+					store(chunk, slot, hash, (data & ~((long) GENERATION_MASK << GENERATION_SHIFT))
+							| (generation << GENERATION_SHIFT));
+					return WRITE_KEPT;
+				}
+
+				replace = slot;
+				outcome = WRITE_UPDATED;
+				break;
+			}
+
+			final int score = replacementScore(data);
+
+			if (score < replaceScore)
+			{
+				replace = slot;
+				replaceScore = score;
+			}
+		}
+
+		final long data = nodeType | (generation << GENERATION_SHIFT) | ((depth - DEPTH_OFFSET) << 8)
+				| ((move == null) ? 0 : (long) move.asBytes() << 16) | ((staticEval & 0xFFFFL) << 32)
+				| ((long) evaluation << 48);
+
+		if (outcome == WRITE_EVICTED && depthOf(chunk.getLong(replace)) > depth - DEPTH_OFFSET)
+		{
+			outcome = WRITE_EVICTED_DEEPER;
+		}
+
+		store(chunk, replace, hash, data);
+
+		return outcome;
+	}
+
+	// Runs task(0) .. task(threads - 1) concurrently and waits for all of them. A
+	// failure in any task is rethrown to the caller once every worker has finished.
+	private static void runInParallel(int threads, IntConsumer task)
+	{
+		if (threads <= 1)
+		{
+			task.accept(0);
+			return;
+		}
+
+		final Thread[] workers = new Thread[threads];
+		final Throwable[] failures = new Throwable[threads];
+
+		for (int i = 0; i < threads; i++)
+		{
+			final int id = i;
+			workers[i] = new Thread(() ->
+			{
+				try
+				{
+					task.accept(id);
+				}
+
+				catch (Throwable e)
+				{
+					failures[id] = e;
+				}
+			});
+			workers[i].start();
+		}
+
+		// The workers write into memory owned by the caller, so they are always
+		// waited for, and an interrupt is only passed on once they are done
+		boolean interrupted = false;
+
+		for (Thread worker : workers)
+		{
+			while (true)
+			{
+				try
+				{
+					worker.join();
+					break;
+				}
+
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
 
-		return new Entry(fragment1, fragment2);
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		Throwable failure = null;
+
+		for (Throwable e : failures)
+		{
+			if (e == null)
+			{
+				continue;
+			}
+
+			if (failure == null)
+			{
+				failure = e;
+			}
+
+			else
+			{
+				failure.addSuppressed(e);
+			}
+		}
+
+		if (failure instanceof Error)
+		{
+			throw (Error) failure;
+		}
+
+		if (failure != null)
+		{
+			throw (RuntimeException) failure;
+		}
 	}
 
-	public void write(Entry entry, long hash, int nodeType, int depth, int evaluation, Move move, int staticEval)
+	private void clearClusters(long begin, long end)
 	{
-		if (entry == null || !entry.hit() || nodeType == NODETYPE_EXACT || !entry.verifySignature(hash)
-				|| depth > entry.getDepth() - 4)
+		while (begin < end)
 		{
-			final int writtenDepth = depth - DEPTH_OFFSET;
-			final short fragment1 = (short) (nodeType | (writtenDepth << 8));
-			final long fragment2 = (hash >>> 48) | ((move == null) ? 0 : move.asBytes() << 16)
-					| ((staticEval & 0xFFFFL) << 32) | ((long) evaluation << 48);
+			final ByteBuffer chunk = chunk(begin);
+			final long chunkEnd = Math.min(end, ((begin >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT);
+			final int limit = offset(chunkEnd - 1) + CLUSTER_BYTES;
+
+			for (int i = offset(begin); i < limit; i += ZEROES.capacity())
+			{
+				chunk.put(i, ZEROES, 0, Math.min(ZEROES.capacity(), limit - i));
+			}
 
-			data1[(int) hash & mask] = fragment1;
-			data2[(int) hash & mask] = fragment2;
+			begin = chunkEnd;
 		}
 	}
 
-	public void clear()
+	// Never more workers than cores or chunks, whatever the Threads option is
+	private static int workerCount(int threads, int chunks)
 	{
-		Arrays.fill(data1, (short) 0);
-		Arrays.fill(data2, 0);
+		return Math.max(1, Math.min(Math.min(threads, Runtime.getRuntime().availableProcessors()), chunks));
 	}
 
-	public void resize(int size)
+	public void clear(int threads)
 	{
-		size *= 1048576 / ENTRY_SIZE;
-		this.size = Integer.highestOneBit(size);
-		this.mask = this.size - 1;
-		this.data1 = new short[this.size];
-		this.data2 = new long[this.size];
+		final int workers = workerCount(threads, chunks.length);
+		final long clustersPerThread = (this.size + workers - 1) / workers;
+
+		runInParallel(workers, id -> clearClusters(Math.min(this.size, id * clustersPerThread),
+				Math.min(this.size, (id + 1) * clustersPerThread)));
+
+		generation = 0;
 	}
 
-	public int hashfull()
+	// allocateDirect only guarantees the alignment of malloc, so the buffer is
+	// over-allocated and sliced to start on a cache line
+	private static ByteBuffer allocateChunk(int bytes)
 	{
-		int hashfull = 0;
+		final ByteBuffer chunk = ByteBuffer.allocateDirect(bytes + CACHE_LINE_BYTES - 1).alignedSlice(CACHE_LINE_BYTES)
+				.limit(bytes).slice().order(ByteOrder.nativeOrder());
+
+		assert chunk.alignmentOffset(0, CACHE_LINE_BYTES) == 0;
+
+		return chunk;
+	}
 
-		for (int i = 0; i < 1000; i++)
+	private static ByteBuffer[] allocateChunks(long clusters, int threads)
+	{
+		final ByteBuffer[] chunks = new ByteBuffer[(int) ((clusters + CHUNK_MASK) >>> CHUNK_SHIFT)];
+
+		// allocateDirect zeroes the memory it returns, so allocating the chunks from
+		// several threads also spreads the initial clear
+		final int workers = workerCount(threads, chunks.length);
+
+		runInParallel(workers, id ->
+		{
+			for (int i = id; i < chunks.length; i += workers)
+			{
+				final long chunkClusters = Math.min(clusters - ((long) i << CHUNK_SHIFT), 1L << CHUNK_SHIFT);
+				chunks[i] = allocateChunk((int) chunkClusters * CLUSTER_BYTES);
+			}
+		});
+
+		return chunks;
+	}
+
+	// If the new table cannot be allocated, an empty table of the previous size is
+	// put back before the failure is rethrown, so the table stays usable
+	public void resize(int size, int threads)
+	{
+		final long previousSize = this.size;
+		final long newSize = (long) size * 1048576 / CLUSTER_BYTES;
+
+		// Direct buffers are only released once they are collected, so let go of the
+		// old table before allocating the new one. A new table has nothing to release.
+		if (this.chunks != null)
+		{
+			this.chunks = null;
+			System.gc();
+		}
+
+		try
 		{
-			if (this.data2[i] != 0)
+			this.chunks = allocateChunks(newSize, threads);
+			this.size = newSize;
+		}
+
+		catch (RuntimeException | Error e)
+		{
+			if (previousSize == 0)
 			{
-				hashfull++;
+				throw e;
 			}
+
+			System.gc();
+			this.chunks = allocateChunks(previousSize, threads);
+			this.size = previousSize;
+			this.generation = 0;
+
+			throw e;
 		}
 
-		return hashfull;
+		this.generation = 0;
 	}
 
-	public int hashfull_accurate()
+	public void save(Path path) throws IOException
 	{
-		int hashfull = 0;
-		int minimum_hash = 1048576 / ENTRY_SIZE;
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+
+		header.putLong(FILE_MAGIC).putInt(FILE_VERSION).putInt(generation).putLong(Board.RANDOM_SEED).putLong(size);
+		header.clear();
 
-		for (int i = 0; i < minimum_hash; i++)
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
 		{
-			if (this.data2[i] != 0)
+			while (header.hasRemaining())
 			{
-				hashfull++;
+				channel.write(header);
+			}
+
+			for (ByteBuffer chunk : chunks)
+			{
+				final ByteBuffer data = chunk.duplicate().clear();
+
+				while (data.hasRemaining())
+				{
+					channel.write(data);
+				}
 			}
 		}
+	}
 
-		return hashfull * 1000 / minimum_hash;
+	// The clusters are mapped privately rather than read, so loading costs no more
+	// than resizing and pages are only faulted in when the search touches them.
+	// Writes go to private copies and never reach the file, but a private mapping
+	// still needs the file to be opened for writing. The file must not be truncated
+	// or rewritten while it is loaded.
+	//
+	// The table is replaced field by field, so neither save nor load may run while a
+	// search is probing it.
+	public void load(Path path) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE))
+		{
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+
+			while (header.hasRemaining())
+			{
+				if (channel.read(header) < 0)
+				{
+					break;
+				}
+			}
+
+			header.flip();
+
+			if (header.remaining() < HEADER_BYTES || header.getLong() != FILE_MAGIC)
+			{
+				throw new IOException("Not a transposition table file");
+			}
+
+			if (header.getInt() != FILE_VERSION)
+			{
+				throw new IOException("Unsupported transposition table format");
+			}
+
+			final int savedGeneration = header.getInt();
+
+			if (header.getLong() != Board.RANDOM_SEED)
+			{
+				throw new IOException("Transposition table was saved with different Zobrist keys");
+			}
+
+			final long savedSize = header.getLong();
+
+			if (savedSize <= 0 || channel.size() != HEADER_BYTES + savedSize * CLUSTER_BYTES)
+			{
+				throw new IOException("Transposition table file is truncated");
+			}
+
+			final ByteBuffer[] newChunks = new ByteBuffer[(int) ((savedSize + CHUNK_MASK) >>> CHUNK_SHIFT)];
+
+			for (int i = 0; i < newChunks.length; i++)
+			{
+				final long clusters = Math.min(savedSize - ((long) i << CHUNK_SHIFT), 1L << CHUNK_SHIFT);
+				newChunks[i] = channel
+						.map(FileChannel.MapMode.PRIVATE, HEADER_BYTES + ((long) i << CHUNK_SHIFT) * CLUSTER_BYTES,
+								clusters * CLUSTER_BYTES)
+						.order(ByteOrder.nativeOrder());
+			}
+
+			this.chunks = newChunks;
+			this.size = savedSize;
+			this.generation = savedGeneration;
+		}
+
+		// As in resize, the direct memory of the old table is only released once its
+		// buffers are collected
+		System.gc();
+	}
+
+	private long countEntries(long clusters, long stride, boolean freshOnly)
+	{
+		long count = 0;
+
+		for (long i = 0; i < clusters * stride; i += stride)
+		{
+			for (int j = 0; j < CLUSTER_SIZE; j++)
+			{
+				final long data = chunk(i).getLong(offset(i) + j * ENTRY_BYTES);
+
+				if (depthOf(data) != 0 && (!freshOnly || generationOf(data) == generation))
+				{
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+
+	public int hashfull()
+	{
+		return (int) countEntries(1000, 1, true) / CLUSTER_SIZE;
+	}
+
+	// Scans the whole table, so only for reporting outside of the search
+	public int hashfull_accurate()
+	{
+		return (int) (countEntries(size, 1, true) * 1000 / getEntryCount());
+	}
+
+	// Samples up to STATS_SAMPLE_CLUSTERS clusters spread evenly over the table
+	private int sampledPermille(boolean freshOnly)
+	{
+		final long clusters = Math.min(size, STATS_SAMPLE_CLUSTERS);
+
+		return (int) (countEntries(clusters, size / clusters, freshOnly) * 1000 / (clusters * CLUSTER_SIZE));
+	}
+
+	public int hashfull_sampled()
+	{
+		return sampledPermille(true);
+	}
+
+	public int occupancy()
+	{
+		return sampledPermille(false);
+	}
+
+	public long getEntryCount()
+	{
+		return this.size * CLUSTER_SIZE;
 	}
 
 	public int getSize()
 	{
-		return this.size * ENTRY_SIZE / 1048576;
+		return (int) (this.size * CLUSTER_BYTES / 1048576);
 	}
-}
\ No newline at end of file
+}
@@ -19,15 +19,50 @@
 
 package org.shawn.games.Serendipity.UCI;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.shawn.games.Serendipity.NNUE.AccumulatorStack;
+import org.shawn.games.Serendipity.NNUE.Inference;
+import org.shawn.games.Serendipity.NNUE.InferenceChooser;
+import org.shawn.games.Serendipity.NNUE.InferenceFuzzer;
+import org.shawn.games.Serendipity.NNUE.NNUE;
 import org.shawn.games.Serendipity.Search.AlphaBeta;
 import org.shawn.games.Serendipity.Search.Limits;
 import org.shawn.games.Serendipity.Search.ThreadManager;
+import org.shawn.games.Serendipity.Search.TranspositionTable;
 import org.shawn.games.Serendipity.Search.Debug.Debugger;
 
 import org.shawn.games.Serendipity.Chess.*;
+import org.shawn.games.Serendipity.Chess.move.Move;
+import org.shawn.games.Serendipity.Chess.util.RandomGames;
+
+import com.sun.management.ThreadMXBean;
 
 public class Bench
 {
+	// The main thread searches on the calling thread, so its allocations are those
+	// of the bench search itself
+	private static final ThreadMXBean ALLOCATION_COUNTER = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static final int FORWARD_ROUNDS = 2000;
+	private static final int INFERENCE_PASSES = 8;
+	private static final int UPDATE_GAMES = 300;
+	private static final int UPDATE_GAME_LENGTH = 200;
+	private static final long UPDATE_SEED = 1;
+	private static final int FUZZ_GAME_LENGTH = 200;
+	private static final int REPETITION_GAME_LENGTH = 300;
+	private static final int REPETITION_OPENING_LENGTH = 20;
+	private static final int REPETITION_ROUNDS = 100;
+	private static final int REPETITION_PASSES = 8;
+	private static final long REPETITION_SEED = 1;
+
 	static private final String[] benchPositions = new String[] {
 			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
 			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 10",
@@ -78,25 +113,68 @@ public class Bench
 			"7k/7P/6K1/8/3B4/8/8/8 b - -", };
 
 	public static void bench(ThreadManager engine, int depth, boolean OBStandard)
+	{
+		bench(engine, depth, OBStandard, Arrays.asList(benchPositions));
+	}
+
+	public static void bench(ThreadManager engine, int depth, String epdFile) throws IOException
+	{
+		List<String> positions = new ArrayList<>();
+
+		for (String line : Files.readAllLines(Paths.get(epdFile)))
+		{
+			String[] fields = line.trim().split("\\s+");
+
+			if (fields.length >= 4)
+			{
+				positions.add(String.join(" ", Arrays.copyOf(fields, 4)));
+			}
+		}
+
+		bench(engine, depth, false, positions);
+	}
+
+	private static void bench(ThreadManager engine, int depth, boolean OBStandard, List<String> positions)
 	{
 		long totalNodes = 0;
+		TranspositionTable.Statistics ttStats = new TranspositionTable.Statistics();
+		TranspositionTable.Statistics qsTTStats = new TranspositionTable.Statistics();
+		long evalProbes = 0;
+		long evalHits = 0;
+		long standPats = 0;
+		long lazyStandPats = 0;
+		final long startAllocated = ALLOCATION_COUNTER.getCurrentThreadAllocatedBytes();
 		long startTime = System.nanoTime();
 		Board board = new Board();
 		AlphaBeta mainThread = engine.getMainThread();
-		for (String fen : benchPositions)
+		for (String fen : positions)
 		{
 			board.loadFromFen(fen);
 			engine.initThreads(board, new Limits(Integer.MAX_VALUE, Integer.MAX_VALUE, 1, -1, depth));
 			mainThread.prepareThreadAndDoIterativeDeepening();
 			totalNodes += mainThread.getNodesCount();
+			ttStats.add(mainThread.getTTStats());
+			qsTTStats.add(mainThread.getQSTTStats());
+			evalProbes += mainThread.getEvalCache().probes;
+			evalHits += mainThread.getEvalCache().hits;
+			standPats += mainThread.getStandPats();
+			lazyStandPats += mainThread.getLazyStandPats();
 		}
 
 		long endTime = System.nanoTime();
+		final long allocated = ALLOCATION_COUNTER.getCurrentThreadAllocatedBytes() - startAllocated;
 
 		if (!OBStandard)
 		{
-			System.out.printf("Total time (ms)\t: %d\nNodes searched\t: %d\nNodes/second\t: %d\n",
-					(endTime - startTime) / 1000000L, totalNodes, totalNodes * 1000000000L / (endTime - startTime));
+			System.out.printf(
+					"Total time (ms)\t: %d\nNodes searched\t: %d\nNodes/second\t: %d\nTT hit rate\t: %.2f%%\n"
+							+ "QS TT hit rate\t: %.2f%%\nEval cache hit rate\t: %.2f%%, %.3f per node\nLazy stand pats\t: %.2f%%\n"
+							+ "Allocated per node\t: %.1f bytes\n",
+					(endTime - startTime) / 1000000L, totalNodes, totalNodes * 1000000000L / (endTime - startTime),
+					ttStats.hits * 100.0 / Math.max(1, ttStats.probes),
+					qsTTStats.hits * 100.0 / Math.max(1, qsTTStats.probes), evalHits * 100.0 / Math.max(1, evalProbes),
+					(double) evalHits / Math.max(1, totalNodes), lazyStandPats * 100.0 / Math.max(1, standPats),
+					(double) allocated / Math.max(1, totalNodes));
 		}
 		else
 		{
@@ -108,4 +186,187 @@ public class Bench
 		engine.clearData();
 
 	}
+
+	// Times accumulator updates and the output layer of every inference kernel, or
+	// only of the named one, and names the kernel the engine picks from the vector
+	// width. The updates replay the same random games for each kernel, and the
+	// forwards run on the bench positions. The checksums must match, as all
+	// kernels are exact. Once a third kernel has run, the update call sites are
+	// megamorphic and its updates are no longer inlined as in a search, and the
+	// two vector kernels share their code, which only stays vectorized while one
+	// of them runs. Speeds are only representative when kernels are timed one at a
+	// time
+	public static void inferenceBench(NNUE network, String kernelName)
+	{
+		final List<List<Move>> games = randomGames(UPDATE_GAMES, UPDATE_GAME_LENGTH);
+		final Board board = new Board();
+		final long forwards = (long) benchPositions.length * FORWARD_ROUNDS;
+		long updates = 0;
+
+		for (List<Move> game : games)
+		{
+			updates += game.size();
+		}
+
+		for (Inference kernel : InferenceChooser.supportedInferences(network.getHiddenSize()))
+		{
+			if (kernelName != null && !kernel.getClass().getSimpleName().equalsIgnoreCase(kernelName))
+			{
+				continue;
+			}
+
+			final AccumulatorStack accumulators = new AccumulatorStack(network, kernel);
+			long checksum = 0;
+			long updateTime = Long.MAX_VALUE;
+			long forwardTime = Long.MAX_VALUE;
+
+			// The best of several passes is reported, which leaves out JIT warmup and
+			// most of the noise of other processes
+			for (int pass = 0; pass < INFERENCE_PASSES; pass++)
+			{
+				checksum = 0;
+				long startTime = System.nanoTime();
+
+				for (List<Move> game : games)
+				{
+					board.loadFromFen(Constants.startStandardFENPosition);
+					accumulators.init(board);
+
+					for (Move move : game)
+					{
+						accumulators.push(board, move, board.doMove(move));
+						accumulators.refreshAndGet(board);
+					}
+				}
+
+				updateTime = Math.min(updateTime, System.nanoTime() - startTime);
+				startTime = System.nanoTime();
+
+				for (String fen : benchPositions)
+				{
+					board.loadFromFen(fen);
+					accumulators.init(board);
+
+					for (int i = 0; i < FORWARD_ROUNDS; i++)
+					{
+						checksum += NNUE.evaluate(board, network, accumulators, kernel);
+					}
+				}
+
+				forwardTime = Math.min(forwardTime, System.nanoTime() - startTime);
+			}
+
+			System.out.printf("%s\t: %d updates/second, %d forwards/second, checksum %d\n",
+					kernel.getClass().getSimpleName(), updates * 1000000000L / updateTime,
+					forwards * 1000000000L / forwardTime, checksum);
+		}
+
+		System.out.printf("Engine kernel\t: %s\n",
+				InferenceChooser.chooseInference(network.getHiddenSize()).getClass().getSimpleName());
+	}
+
+	private static List<List<Move>> randomGames(int count, int maxLength)
+	{
+		final Random random = new Random(UPDATE_SEED);
+		final List<List<Move>> games = new ArrayList<>();
+		final Board board = new Board();
+
+		for (int i = 0; i < count; i++)
+		{
+			board.loadFromFen(Constants.startStandardFENPosition);
+			games.add(RandomGames.play(board, random, maxLength));
+		}
+
+		return games;
+	}
+
+	// Times repetition detection along a long game with a growing half-move
+	// window, as searched late in a game. After a short opening only quiet piece
+	// moves are played where possible, so the half-move counter is never reset
+	public static void repetitionBench()
+	{
+		final List<Move> game = quietGame(REPETITION_GAME_LENGTH);
+		final Board board = new Board();
+		final long checks = (long) game.size() * REPETITION_ROUNDS * 2;
+		long bestTime = Long.MAX_VALUE;
+		int repetitions = 0;
+
+		for (int pass = 0; pass < REPETITION_PASSES; pass++)
+		{
+			repetitions = 0;
+			board.loadFromFen(Constants.startStandardFENPosition);
+			final long startTime = System.nanoTime();
+
+			for (Move move : game)
+			{
+				board.doMove(move);
+
+				for (int i = 0; i < REPETITION_ROUNDS; i++)
+				{
+					repetitions += board.isRepetition(2) ? 1 : 0;
+					repetitions += board.isRepetition() ? 1 : 0;
+				}
+			}
+
+			bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+		}
+
+		System.out.printf("%d plies, %d repetition checks/second, %d repetitions found\n", game.size(),
+				checks * 1000000000L / bestTime, repetitions);
+	}
+
+	private static List<Move> quietGame(int length)
+	{
+		final Random random = new Random(REPETITION_SEED);
+		final List<Move> game = new ArrayList<>();
+		final Board board = new Board();
+
+		while (game.size() < length)
+		{
+			final List<Move> moves = board.legalMoves();
+			final List<Move> quietMoves = new ArrayList<>();
+
+			if (moves.isEmpty())
+			{
+				break;
+			}
+
+			for (Move move : moves)
+			{
+				if (board.getPiece(move.getTo()) == Piece.NONE
+						&& board.getPiece(move.getFrom()).getPieceType() != PieceType.PAWN)
+				{
+					quietMoves.add(move);
+				}
+			}
+
+			final List<Move> candidates = game.size() < REPETITION_OPENING_LENGTH || quietMoves.isEmpty() ? moves
+					: quietMoves;
+			final Move move = candidates.get(random.nextInt(candidates.size()));
+
+			board.doMove(move);
+			game.add(move);
+		}
+
+		return game;
+	}
+
+	// Plays random games and compares all inference kernels and accumulator paths
+	// at every evaluated ply
+	public static void inferenceFuzz(NNUE network, int games, long seed)
+	{
+		final InferenceFuzzer fuzzer = new InferenceFuzzer(network, seed);
+
+		try
+		{
+			final long positions = fuzzer.run(games, FUZZ_GAME_LENGTH);
+			System.out.printf("%d positions checked with %d kernels, no differences\n", positions,
+					fuzzer.getKernels().size());
+		}
+
+		catch (IllegalStateException e)
+		{
+			System.out.println("Mismatch: " + e.getMessage());
+		}
+	}
 }
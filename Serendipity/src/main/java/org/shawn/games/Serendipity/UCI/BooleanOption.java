@@ -0,0 +1,57 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity.UCI;
+
+public class BooleanOption implements UCIOption
+{
+	boolean value;
+	final String name;
+	final boolean defaultValue;
+
+	public BooleanOption(boolean value, String name)
+	{
+		this.value = this.defaultValue = value;
+		this.name = name;
+
+		UCI.addOption(name, this);
+	}
+
+	@Override
+	public void set(String value)
+	{
+		this.value = Boolean.parseBoolean(value);
+	}
+
+	public boolean get()
+	{
+		return value;
+	}
+
+	public String toString()
+	{
+		return "option name " + name + " type check default " + defaultValue;
+	}
+
+	@Override
+	public String getString()
+	{
+		return Boolean.toString(this.value);
+	}
+}
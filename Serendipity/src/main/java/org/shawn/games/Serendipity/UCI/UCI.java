@@ -19,11 +19,18 @@
 
 package org.shawn.games.Serendipity.UCI;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 import org.shawn.games.Serendipity.NNUE.AccumulatorStack;
+import org.shawn.games.Serendipity.NNUE.BatchEvaluator;
 import org.shawn.games.Serendipity.NNUE.NNUE;
+import org.shawn.games.Serendipity.NNUE.NetworkFile;
 import org.shawn.games.Serendipity.Search.Limits;
 import org.shawn.games.Serendipity.Search.ThreadManager;
 import org.shawn.games.Serendipity.Search.TranspositionTable;
@@ -41,6 +48,7 @@ public class UCI
 
 	private static ThreadsOption threads;
 	private static HashOption hash;
+	private static QSHashOption qsHash;
 
 	public static class NNUEOption extends StringOption
 	{
@@ -54,7 +62,9 @@ public class UCI
 		{
 			try
 			{
-				network = new NNUE("/" + value);
+				final Path path = Paths.get(value);
+
+				network = Files.isRegularFile(path) ? new NNUE(path) : new NNUE("/" + value);
 			}
 
 			catch (IOException e)
@@ -81,8 +91,24 @@ public class UCI
 		@Override
 		public void set(String value)
 		{
+			final int previous = super.value;
+
 			super.set(value);
-			tt.resize(super.value);
+
+			try
+			{
+				tt.resize(super.value, threads.get());
+			}
+
+			catch (OutOfMemoryError e)
+			{
+				System.out.println("info string Unable to allocate " + super.value + " MB of hash, keeping "
+						+ previous + " MB (raise -XX:MaxDirectMemorySize if memory is available)");
+				super.value = tt.getSize();
+			}
+
+			System.out.println("info string Hash set to " + tt.getSize() + " MB (" + tt.getEntryCount()
+					+ " entries)");
 		}
 	}
 
@@ -101,13 +127,55 @@ public class UCI
 		}
 	}
 
+	public static class QSHashOption extends IntegerOption
+	{
+		public QSHashOption(int value, int lowerBound, int upperBound, String name)
+		{
+			super(value, lowerBound, upperBound, name);
+		}
+
+		@Override
+		public void set(String value)
+		{
+			super.set(value);
+			engine.reinitQSHash(super.value);
+		}
+	}
+
 	public static void main(String[] args)
 	{
+		if ((args.length == 3 || args.length == 4) && args[0].equals("packnet"))
+		{
+			// The jar already deflates its entries, so only standalone files are worth deflating
+			final int encoding = args.length == 4 ? NetworkFile.ENCODING_VARINT_DEFLATE : NetworkFile.ENCODING_VARINT;
+
+			// Runs from the build, which has to stop instead of embedding a stale network
+			if (args.length == 4 && !args[3].equals("deflate"))
+			{
+				System.out.println("Unknown network encoding " + args[3] + ", expected deflate");
+				System.exit(1);
+			}
+
+			try
+			{
+				NetworkFile.pack(Paths.get(args[1]), Paths.get(args[2]), encoding);
+			}
+
+			catch (IOException e)
+			{
+				System.out.println("Error packing " + args[1] + ": " + e.getMessage());
+				System.exit(1);
+			}
+
+			return;
+		}
+
 		transpositionTable = new TranspositionTable(4);
 		options = new HashMap<>();
 		StringOption networkName = new NNUEOption("embedded.nnue", "nnuefile");
 		threads = new ThreadsOption(1, 1, 1048576, "Threads");
-		hash = new HashOption(4, 1, 32768, transpositionTable, "Hash");
+		hash = new HashOption(4, 1, 1048576, transpositionTable, "Hash");
+		qsHash = new QSHashOption(0, 0, 64, "QSHash");
 
 		try
 		{
@@ -210,7 +278,7 @@ public class UCI
 				case "ucinewgame":
 					System.gc();
 					internalBoard = new Board();
-					transpositionTable.clear();
+					transpositionTable.newSearch();
 					engine.init(threads.get(), transpositionTable, network);
 					break;
 				case "quit":
@@ -241,6 +309,31 @@ public class UCI
 					System.out.println(internalBoard);
 					System.out.println(NNUE.evaluate(internalBoard, network, acc));
 					break;
+				case "evalbatch":
+					if (fullCommand.length < 3)
+					{
+						System.out.println("info string Usage: evalbatch <input> <output>");
+						break;
+					}
+
+					try (BatchEvaluator evaluator = new BatchEvaluator(network, threads.get());
+							BufferedReader batchInput = Files.newBufferedReader(Paths.get(fullCommand[1]));
+							BufferedWriter batchOutput = Files.newBufferedWriter(Paths.get(fullCommand[2])))
+					{
+						final long batchStart = System.nanoTime();
+						final long positions = evaluator.evaluate(batchInput, batchOutput);
+						final long batchTime = Math.max(1, System.nanoTime() - batchStart);
+
+						System.out.println("info string Evaluated " + positions + " positions in "
+								+ batchTime / 1000000 + " ms, " + positions * 1000000000L / batchTime
+								+ " positions/second");
+					}
+
+					catch (IOException e)
+					{
+						System.out.println("info string Error evaluating " + fullCommand[1] + ": " + e.getMessage());
+					}
+					break;
 				case "go":
 					Limits limits = new Limits();
 					limits.setTime(157680000000L);
@@ -347,14 +440,108 @@ public class UCI
 						System.out.println(option + " value " + option.getString());
 					}
 					break;
+				case "tt":
+					if (fullCommand.length > 1 && fullCommand[1].equals("stats"))
+					{
+						TranspositionTable.Statistics stats = engine.getTTStats();
+
+						System.out.printf(
+								"info string tt probes %d hits %d (%.2f%%) collisions %d (%.2f%%) signature mismatches %d\n",
+								stats.probes, stats.hits, stats.hits * 100.0 / Math.max(1, stats.probes),
+								stats.collisions, stats.collisions * 100.0 / Math.max(1, stats.probes), stats.mismatches);
+						System.out.printf(
+								"info string tt writes %d evictions %d (%.2f%%) deep evictions %d (%.2f%%)\n",
+								stats.writes, stats.evictions, stats.evictions * 100.0 / Math.max(1, stats.writes),
+								stats.deepEvictions, stats.deepEvictions * 100.0 / Math.max(1, stats.writes));
+						if (qsHash.get() > 0)
+						{
+							TranspositionTable.Statistics qsStats = engine.getQSTTStats();
+
+							System.out.printf("info string qstt probes %d hits %d (%.2f%%) writes %d\n", qsStats.probes,
+									qsStats.hits, qsStats.hits * 100.0 / Math.max(1, qsStats.probes), qsStats.writes);
+						}
+
+						System.out.printf("info string tt hashfull %d occupancy %d entries %d size %d MB\n",
+								transpositionTable.hashfull_sampled(), transpositionTable.occupancy(),
+								transpositionTable.getEntryCount(), transpositionTable.getSize());
+					}
+
+					else if (fullCommand.length > 2 && engine.isSearching()
+							&& (fullCommand[1].equals("save") || fullCommand[1].equals("load")))
+					{
+						System.out.println("info string Cannot " + fullCommand[1] + " the hash while searching");
+					}
+
+					else if (fullCommand.length > 2 && fullCommand[1].equals("save"))
+					{
+						try
+						{
+							transpositionTable.save(Paths.get(fullCommand[2]));
+							System.out.println("info string Saved hash to " + fullCommand[2]);
+						}
+
+						catch (IOException e)
+						{
+							System.out.println("info string Error writing " + fullCommand[2] + ": " + e.getMessage());
+						}
+					}
+
+					else if (fullCommand.length > 2 && fullCommand[1].equals("load"))
+					{
+						try
+						{
+							transpositionTable.load(Paths.get(fullCommand[2]));
+							hash.value = transpositionTable.getSize();
+							System.out.println("info string Loaded hash from " + fullCommand[2] + ", Hash set to "
+									+ transpositionTable.getSize() + " MB");
+						}
+
+						catch (IOException e)
+						{
+							System.out.println("info string Error reading " + fullCommand[2] + ": " + e.getMessage());
+						}
+					}
+					break;
 				case "bench":
+					if (fullCommand.length > 1 && fullCommand[1].equals("inference"))
+					{
+						Bench.inferenceBench(network, fullCommand.length > 2 ? fullCommand[2] : null);
+						break;
+					}
+					if (fullCommand.length > 1 && fullCommand[1].equals("repetition"))
+					{
+						Bench.repetitionBench();
+						break;
+					}
+					if (fullCommand.length > 1 && fullCommand[1].equals("fuzz"))
+					{
+						Bench.inferenceFuzz(network, fullCommand.length > 2 ? Integer.parseInt(fullCommand[2]) : 100,
+								fullCommand.length > 3 ? Long.parseLong(fullCommand[3]) : 1);
+						break;
+					}
 					depth = 10;
 					if (fullCommand.length > 1)
 					{
 						depth = Integer.parseInt(fullCommand[1]);
 					}
-					Bench.bench(engine, depth, false);
-					transpositionTable.clear();
+					if (fullCommand.length > 2)
+					{
+						try
+						{
+							Bench.bench(engine, depth, fullCommand[2]);
+						}
+
+						catch (IOException e)
+						{
+							System.out.println("info string Error reading " + fullCommand[2]);
+						}
+					}
+
+					else
+					{
+						Bench.bench(engine, depth, false);
+					}
+					transpositionTable.clear(threads.get());
 					break;
 			}
 		}
@@ -27,11 +27,21 @@ import org.shawn.games.Serendipity.Chess.move.*;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import org.junit.Test;
 
 public class AccumulatorTest
 {
+	// Castles on both sides, captures en passant and under-promotes, as the game of
+	// testAccumulators does
+	private static final String[] REUSED_DIFFS_GAME = { "e2e4", "d7d5", "e4e5", "f7f5", "e5f6", "e7e5", "f6g7",
+			"f8g7", "g1e2", "g8e7", "d2d3", "e8g8", "c1e3", "c7c6", "d1d2", "b8d7", "b1c3", "e5e4", "e1c1", "g8h8",
+			"g2g3", "f8e8", "f1g2", "e8g8", "d2e1", "g8e8", "e1g1", "e4d3", "c1b1", "d3e2", "b1a1", "e2e1n" };
+
 	AccumulatorStack accumulators;
 	NNUE network;
 	Board board;
@@ -83,4 +93,56 @@ public class AccumulatorTest
 
 		assertEquals(incrementallyUpdatedEvaluation, fullUpdatedEvaluation);
 	}
+
+	@Test
+	public void testReusedDiffs()
+	{
+		for (String uciMove : REUSED_DIFFS_GAME)
+		{
+			Move move = new Move(uciMove, board.getSideToMove());
+
+			// Search one sibling first, so that the diff slot of this ply is reused
+			Move sibling = board.legalMoves().get(0);
+
+			accumulators.push(board, sibling, board.doMove(sibling, accumulators.nextDiff()));
+			evaluate(board);
+			board.undoMove();
+			accumulators.pop();
+
+			accumulators.push(board, move, board.doMove(move, accumulators.nextDiff()));
+		}
+
+		final int incrementallyUpdatedEvaluation = evaluate(board);
+
+		accumulators.init(board);
+
+		assertEquals(incrementallyUpdatedEvaluation, evaluate(board));
+	}
+
+	@Test
+	public void testNetworkFromFile() throws IOException
+	{
+		Path file = Files.createTempFile("network", ".nnue");
+
+		try (InputStream resource = AccumulatorTest.class.getResourceAsStream("/embedded.nnue"))
+		{
+			Files.copy(resource, file, StandardCopyOption.REPLACE_EXISTING);
+
+			NNUE fromFile = new NNUE(file);
+			AccumulatorStack fileAccumulators = new AccumulatorStack(fromFile);
+			Board position = new Board();
+
+			position.loadFromFen("r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4");
+			accumulators.init(position);
+			fileAccumulators.init(position);
+
+			assertEquals(NNUE.evaluate(position, network, accumulators),
+					NNUE.evaluate(position, fromFile, fileAccumulators));
+		}
+
+		finally
+		{
+			Files.delete(file);
+		}
+	}
 }
@@ -0,0 +1,103 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.move.Move;
+import org.shawn.games.Serendipity.Chess.util.RandomGames;
+import org.shawn.games.Serendipity.NNUE.*;
+
+public class BatchEvaluatorTest
+{
+	@Test
+	public void testOrderAndValues() throws IOException
+	{
+		final NNUE network = new NNUE("/embedded.nnue");
+		final Random random = new Random(1);
+		final List<String> lines = new ArrayList<>();
+		final Board board = new Board();
+
+		while (lines.size() < 3000)
+		{
+			board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+
+			for (int ply = 0; ply < 80; ply++)
+			{
+				final Move move = RandomGames.randomMove(board, random);
+
+				if (move == null)
+				{
+					break;
+				}
+
+				board.doMove(move);
+				lines.add(board.getFen());
+			}
+		}
+
+		lines.set(10, "");
+		lines.set(20, "not a fen");
+		lines.set(30, lines.get(31) + " | 0.5");
+		lines.set(40, "8/8/8/8/8/8/8/8 w - - 0 1");
+
+		final List<String> expected = new ArrayList<>();
+
+		for (String line : lines)
+		{
+			if (line.isBlank() || line.equals("not a fen") || line.startsWith("8/8/8/8/8/8/8/8"))
+			{
+				expected.add("none");
+				continue;
+			}
+
+			final AccumulatorStack accumulators = new AccumulatorStack(network);
+			board.loadFromFen(line.split("\\|")[0].trim());
+			accumulators.init(board);
+			expected.add(Integer.toString(NNUE.evaluate(board, network, accumulators)));
+		}
+
+		try (BatchEvaluator evaluator = new BatchEvaluator(network, 3))
+		{
+			final int[] evaluations = evaluator.evaluate(lines);
+			final StringWriter output = new StringWriter();
+
+			for (int i = 0; i < evaluations.length; i++)
+			{
+				assertEquals(expected.get(i),
+						evaluations[i] == BatchEvaluator.NONE ? "none" : Integer.toString(evaluations[i]));
+			}
+
+			assertEquals(lines.size(),
+					evaluator.evaluate(new BufferedReader(new StringReader(String.join("\n", lines))), output));
+			assertEquals(expected, List.of(output.toString().split("\n", -1)).subList(0, lines.size()));
+		}
+	}
+}
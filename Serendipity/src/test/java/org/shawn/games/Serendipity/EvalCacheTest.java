@@ -0,0 +1,56 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.shawn.games.Serendipity.Search.EvalCache;
+
+import org.shawn.games.Serendipity.Chess.Board;
+
+public class EvalCacheTest
+{
+	@Test
+	public void testEvalCache()
+	{
+		EvalCache cache = new EvalCache();
+		Board board = new Board();
+		long key = board.getIncrementalHashKey();
+
+		assertEquals(EvalCache.NONE, cache.probe(key));
+
+		cache.store(key, -123);
+		assertEquals(-123, cache.probe(key));
+
+		// A different position in the same slot replaces the entry
+		long collidingKey = key ^ (1L << 40);
+		cache.store(collidingKey, 45);
+		assertEquals(EvalCache.NONE, cache.probe(key));
+		assertEquals(45, cache.probe(collidingKey));
+
+		assertEquals(4, cache.probes);
+		assertEquals(2, cache.hits);
+
+		cache.resetStatistics();
+		assertEquals(0, cache.probes);
+		assertEquals(0, cache.hits);
+	}
+}
@@ -0,0 +1,196 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.move.Move;
+import org.shawn.games.Serendipity.Chess.util.RandomGames;
+import org.shawn.games.Serendipity.NNUE.*;
+
+public class InferenceTest
+{
+	private static final int HIDDEN_SIZE = 1536;
+	private static final int ROWS = 8;
+	private static final int GAMES = 40;
+	private static final int MAX_GAME_LENGTH = 150;
+
+	private final Random random = new Random(1);
+
+	private short[] randomShorts(int length, int bound)
+	{
+		short[] values = new short[length];
+
+		for (int i = 0; i < length; i++)
+		{
+			values[i] = (short) (random.nextInt(2 * bound + 1) - bound);
+		}
+
+		return values;
+	}
+
+	private void assertSameUpdates(Inference expected, Inference actual)
+	{
+		assertSameUpdates(expected, actual, HIDDEN_SIZE);
+	}
+
+	private void assertSameUpdates(Inference expected, Inference actual, int hiddenSize)
+	{
+		short[] weights = randomShorts(hiddenSize * ROWS, 127);
+
+		for (int n = 0; n < 100; n++)
+		{
+			short[] from = randomShorts(hiddenSize, 2000);
+			short[] expectedValues = new short[hiddenSize];
+			short[] actualValues = new short[hiddenSize];
+			int[] rows = new int[4];
+
+			for (int i = 0; i < rows.length; i++)
+			{
+				rows[i] = random.nextInt(ROWS) * hiddenSize;
+			}
+
+			expected.add(expectedValues, from, weights, rows[0]);
+			actual.add(actualValues, from, weights, rows[0]);
+			assertArrayEquals(expectedValues, actualValues);
+
+			expected.sub(expectedValues, from, weights, rows[0]);
+			actual.sub(actualValues, from, weights, rows[0]);
+			assertArrayEquals(expectedValues, actualValues);
+
+			expected.addSub(expectedValues, from, weights, rows[0], rows[1]);
+			actual.addSub(actualValues, from, weights, rows[0], rows[1]);
+			assertArrayEquals(expectedValues, actualValues);
+
+			expected.addSubSub(expectedValues, from, weights, rows[0], rows[1], rows[2]);
+			actual.addSubSub(actualValues, from, weights, rows[0], rows[1], rows[2]);
+			assertArrayEquals(expectedValues, actualValues);
+
+			expected.addAddSubSub(expectedValues, from, weights, rows[0], rows[1], rows[2], rows[3]);
+			actual.addAddSubSub(actualValues, from, weights, rows[0], rows[1], rows[2], rows[3]);
+			assertArrayEquals(expectedValues, actualValues);
+
+			short[] blackFrom = randomShorts(hiddenSize, 2000);
+			short[] expectedBlack = new short[hiddenSize];
+			short[] actualBlack = new short[hiddenSize];
+
+			expected.addSub(expectedValues, from, weights, rows[0], rows[1]);
+			expected.addSub(expectedBlack, blackFrom, weights, rows[2], rows[3]);
+			actual.addSub(actualValues, from, actualBlack, blackFrom, weights, rows[0], rows[1], rows[2], rows[3]);
+			assertArrayEquals(expectedValues, actualValues);
+			assertArrayEquals(expectedBlack, actualBlack);
+
+			expected.addSubSub(expectedValues, from, weights, rows[0], rows[1], rows[2]);
+			expected.addSubSub(expectedBlack, blackFrom, weights, rows[3], rows[2], rows[1]);
+			actual.addSubSub(actualValues, from, actualBlack, blackFrom, weights, rows[0], rows[1], rows[2], rows[3],
+					rows[2], rows[1]);
+			assertArrayEquals(expectedValues, actualValues);
+			assertArrayEquals(expectedBlack, actualBlack);
+
+			expected.addAddSubSub(expectedValues, from, weights, rows[0], rows[1], rows[2], rows[3]);
+			expected.addAddSubSub(expectedBlack, blackFrom, weights, rows[3], rows[2], rows[1], rows[0]);
+			actual.addAddSubSub(actualValues, from, actualBlack, blackFrom, weights, rows[0], rows[1], rows[2],
+					rows[3], rows[3], rows[2], rows[1], rows[0]);
+			assertArrayEquals(expectedValues, actualValues);
+			assertArrayEquals(expectedBlack, actualBlack);
+
+			short[] them = randomShorts(hiddenSize, 400);
+			short bias = (short) random.nextInt(1000);
+
+			int outputRow = random.nextInt(ROWS - 1) * hiddenSize;
+
+			assertEquals(expected.forward(from, them, weights, outputRow, bias),
+					actual.forward(from, them, weights, outputRow, bias));
+		}
+	}
+
+	@Test
+	public void testSIMD128Inference()
+	{
+		assertSameUpdates(new ScalarInference(HIDDEN_SIZE), new SIMD128Inference(HIDDEN_SIZE));
+	}
+
+	@Test
+	public void testSIMDInference()
+	{
+		assertSameUpdates(new ScalarInference(HIDDEN_SIZE), new SIMDInference(HIDDEN_SIZE));
+	}
+
+	@Test
+	public void testSmallHiddenSize()
+	{
+		assertSameUpdates(new ScalarInference(512), new SIMD128Inference(512), 512);
+		assertSameUpdates(new ScalarInference(512), new SIMDInference(512), 512);
+	}
+
+	@Test
+	public void testRandomGames() throws IOException
+	{
+		final NNUE network = new NNUE("/embedded.nnue");
+		final AccumulatorStack accumulators = new AccumulatorStack(network);
+		final Inference scalar = new ScalarInference(HIDDEN_SIZE);
+		final Inference[] kernels = { new SIMD128Inference(HIDDEN_SIZE), new SIMDInference(HIDDEN_SIZE) };
+		int positions = 0;
+
+		for (int game = 0; game < GAMES; game++)
+		{
+			Board board = new Board();
+			accumulators.init(board);
+
+			for (int ply = 0; ply < MAX_GAME_LENGTH; ply++)
+			{
+				Move move = RandomGames.randomMove(board, random);
+
+				if (move == null)
+				{
+					break;
+				}
+
+				accumulators.push(board, move, board.doMove(move));
+
+				final int expected = NNUE.evaluate(board, network, accumulators, scalar);
+
+				for (Inference kernel : kernels)
+				{
+					assertEquals(expected, NNUE.evaluate(board, network, accumulators, kernel));
+				}
+
+				positions++;
+			}
+		}
+
+		assertTrue(positions > 1000);
+	}
+
+	@Test
+	public void testFuzzer() throws IOException
+	{
+		final InferenceFuzzer fuzzer = new InferenceFuzzer(new NNUE("/embedded.nnue"), 1);
+
+		assertTrue(fuzzer.run(20, MAX_GAME_LENGTH) > 1000);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.shawn.games.Serendipity.Chess.AccumulatorDiff;
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.MoveBackup;
+import org.shawn.games.Serendipity.Chess.move.Move;
+import org.shawn.games.Serendipity.Chess.util.RandomGames;
+
+public class MoveBackupTest
+{
+	private static final int GAMES = 20;
+	private static final int MAX_GAME_LENGTH = 200;
+
+	private List<List<Move>> randomGames()
+	{
+		final Random random = new Random(1);
+		final List<List<Move>> games = new ArrayList<>();
+		final Board board = new Board();
+
+		for (int game = 0; game < GAMES; game++)
+		{
+			board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+			games.add(RandomGames.play(board, random, MAX_GAME_LENGTH));
+		}
+
+		return games;
+	}
+
+	@Test
+	public void testUndo()
+	{
+		final Board board = new Board();
+
+		for (List<Move> game : randomGames())
+		{
+			final List<String> fens = new ArrayList<>();
+			final List<Long> keys = new ArrayList<>();
+
+			for (Move move : game)
+			{
+				fens.add(board.getFen());
+				keys.add(board.getIncrementalHashKey());
+				board.doMove(move);
+			}
+
+			for (int i = game.size() - 1; i >= 0; i--)
+			{
+				board.undoMove();
+				assertEquals(fens.get(i), board.getFen());
+				assertEquals((long) keys.get(i), board.getIncrementalHashKey());
+			}
+		}
+
+		assertNull(board.undoMove());
+	}
+
+	// Every ply reuses the backup of the same ply in earlier games, so moves made
+	// in a search allocate none. The allocation itself is measured by bench, as the
+	// allocated byte count of a thread also includes what the JIT allocates
+	@Test
+	public void testBackupsReused()
+	{
+		final Board board = new Board();
+		final AccumulatorDiff diff = new AccumulatorDiff();
+		final List<MoveBackup> backups = new ArrayList<>();
+
+		for (List<Move> game : randomGames())
+		{
+			for (int i = 0; i < game.size(); i++)
+			{
+				board.doMove(game.get(i), diff);
+
+				if (i < backups.size())
+				{
+					assertSame(backups.get(i), board.getLastBackup());
+				}
+
+				else
+				{
+					backups.add(board.getLastBackup());
+				}
+			}
+
+			for (int i = game.size() - 1; i >= 0; i--)
+			{
+				assertEquals(game.get(i), board.undoMove());
+			}
+		}
+
+		assertTrue(backups.size() > 100);
+	}
+}
@@ -0,0 +1,208 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.shawn.games.Serendipity.Chess.AccumulatorDiff;
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.move.Move;
+import org.shawn.games.Serendipity.Chess.util.RandomGames;
+import org.shawn.games.Serendipity.NNUE.*;
+
+public class NetworkFileTest
+{
+	private static final String FEN = "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4";
+
+	private static int evaluate(NNUE network)
+	{
+		Board board = new Board();
+		AccumulatorStack accumulators = new AccumulatorStack(network);
+
+		board.loadFromFen(FEN);
+		accumulators.init(board);
+
+		return NNUE.evaluate(board, network, accumulators);
+	}
+
+	private static Path copyEmbedded() throws IOException
+	{
+		Path file = Files.createTempFile("network", ".nnue");
+
+		try (InputStream resource = NetworkFileTest.class.getResourceAsStream("/embedded.nnue"))
+		{
+			Files.copy(resource, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		return file;
+	}
+
+	private static void assertRejected(Path file)
+	{
+		try
+		{
+			new NNUE(file);
+			fail("Loaded a damaged network");
+		}
+
+		catch (IOException e)
+		{
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final int expected = evaluate(new NNUE("/embedded.nnue"));
+		final Path source = copyEmbedded();
+		final Path packed = Files.createTempFile("network", ".nnue");
+
+		try
+		{
+			for (int encoding : new int[] { NetworkFile.ENCODING_RAW, NetworkFile.ENCODING_VARINT,
+					NetworkFile.ENCODING_VARINT_DEFLATE })
+			{
+				NetworkFile.pack(source, packed, encoding);
+				assertEquals(expected, evaluate(new NNUE(packed)));
+			}
+		}
+
+		finally
+		{
+			Files.delete(source);
+			Files.delete(packed);
+		}
+	}
+
+	@Test
+	public void testDamagedFiles() throws IOException
+	{
+		final Path source = copyEmbedded();
+		final Path packed = Files.createTempFile("network", ".nnue");
+
+		try
+		{
+			NetworkFile.pack(source, packed, NetworkFile.ENCODING_VARINT);
+			final byte[] bytes = Files.readAllBytes(packed);
+
+			bytes[bytes.length / 2] ^= 1;
+			Files.write(packed, bytes);
+			assertRejected(packed);
+
+			bytes[bytes.length / 2] ^= 1;
+			Files.write(packed, Arrays.copyOf(bytes, bytes.length - 1));
+			assertRejected(packed);
+
+			bytes[16] ^= 1;
+			Files.write(packed, bytes);
+			assertRejected(packed);
+
+			// The length of the encoded weights, negative and then too short
+			bytes[16] ^= 1;
+			bytes[55] ^= 0x80;
+			Files.write(packed, bytes);
+			assertRejected(packed);
+
+			bytes[55] ^= 0x80;
+			bytes[52] ^= 1;
+			Files.write(packed, bytes);
+			assertRejected(packed);
+		}
+
+		finally
+		{
+			Files.delete(source);
+			Files.delete(packed);
+		}
+	}
+
+	@Test
+	public void testSmallNetwork() throws IOException
+	{
+		final int hiddenSize = 64;
+		final Random random = new Random(1);
+		final ByteBuffer weights = ByteBuffer.allocate((768 * 7 * hiddenSize + hiddenSize + 16 * hiddenSize + 8) * 2)
+				.order(ByteOrder.LITTLE_ENDIAN);
+
+		while (weights.hasRemaining())
+		{
+			weights.putShort((short) (random.nextInt(129) - 64));
+		}
+
+		final Path raw = Files.createTempFile("network", ".nnue");
+		final Path packed = Files.createTempFile("network", ".nnue");
+
+		try
+		{
+			Files.write(raw, weights.array());
+			NetworkFile.pack(raw, packed, NetworkFile.ENCODING_VARINT);
+
+			final NNUE rawNetwork = new NNUE(raw);
+			final NNUE packedNetwork = new NNUE(packed);
+			final AccumulatorStack rawAccumulators = new AccumulatorStack(rawNetwork);
+			final AccumulatorStack packedAccumulators = new AccumulatorStack(packedNetwork);
+			final AccumulatorStack refreshed = new AccumulatorStack(packedNetwork);
+			final Board board = new Board();
+
+			assertEquals(hiddenSize, packedNetwork.getHiddenSize());
+
+			rawAccumulators.init(board);
+			packedAccumulators.init(board);
+
+			for (int ply = 0; ply < 60; ply++)
+			{
+				final Move move = RandomGames.randomMove(board, random);
+
+				if (move == null)
+				{
+					break;
+				}
+
+				final AccumulatorDiff diff = board.doMove(move);
+
+				rawAccumulators.push(board, move, diff);
+				packedAccumulators.push(board, move, diff);
+				refreshed.init(board);
+
+				final int expected = NNUE.evaluate(board, packedNetwork, refreshed);
+
+				assertEquals(expected, NNUE.evaluate(board, rawNetwork, rawAccumulators));
+				assertEquals(expected, NNUE.evaluate(board, packedNetwork, packedAccumulators));
+			}
+		}
+
+		finally
+		{
+			Files.delete(raw);
+			Files.delete(packed);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+  This file is part of Serendipity, an UCI chess engine written in Java.
+
+  Copyright (C) 2024-2025  Shawn Xu <shawn@shawnxu.org>
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU Affero General Public License as
+  published by the Free Software Foundation, either version 3 of the
+  License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU Affero General Public License for more details.
+
+  You should have received a copy of the GNU Affero General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+
+package org.shawn.games.Serendipity;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.shawn.games.Serendipity.Chess.Board;
+import org.shawn.games.Serendipity.Chess.Square;
+import org.shawn.games.Serendipity.Chess.move.Move;
+
+public class RepetitionTest
+{
+	private static final Move[] KNIGHT_SHUFFLE = { new Move(Square.G1, Square.F3), new Move(Square.G8, Square.F6),
+			new Move(Square.F3, Square.G1), new Move(Square.F6, Square.G8) };
+
+	private void shuffle(Board board)
+	{
+		for (Move move : KNIGHT_SHUFFLE)
+		{
+			board.doMove(move);
+		}
+	}
+
+	@Test
+	public void testRepetitions()
+	{
+		final Board board = new Board();
+
+		shuffle(board);
+		assertTrue(board.isRepetition(2));
+		assertFalse(board.isRepetition());
+
+		shuffle(board);
+		assertTrue(board.isRepetition());
+
+		board.undoMove();
+		assertTrue(board.isRepetition(2));
+		assertFalse(board.isRepetition());
+
+		board.doMove(KNIGHT_SHUFFLE[3]);
+		assertTrue(board.isRepetition());
+		assertEquals(9, board.getHistorySize());
+	}
+
+	@Test
+	public void testIrreversibleMove()
+	{
+		final Board board = new Board();
+
+		shuffle(board);
+		board.doMove(new Move(Square.E2, Square.E4));
+		board.doMove(new Move(Square.E7, Square.E5));
+		assertFalse(board.isRepetition(2));
+
+		shuffle(board);
+		assertTrue(board.isRepetition(2));
+		assertFalse(board.isRepetition());
+	}
+
+	@Test
+	public void testLongHistory()
+	{
+		final Board board = new Board();
+
+		for (int i = 0; i < 1000; i++)
+		{
+			shuffle(board);
+		}
+
+		assertEquals(4001, board.getHistorySize());
+		assertTrue(board.isRepetition());
+		assertTrue(board.strictEquals(board.clone()));
+
+		for (int i = 0; i < 4000; i++)
+		{
+			board.undoMove();
+		}
+
+		assertArrayEquals(new long[] { board.getIncrementalHashKey() }, board.getHistory());
+		assertFalse(board.isRepetition(2));
+	}
+}
@@ -23,6 +23,14 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.shawn.games.Serendipity.Search.TranspositionTable;
@@ -37,28 +45,308 @@ public class TranspositionTableTest
 	{
 		Board board = new Board();
 		TranspositionTable tt = new TranspositionTable(4);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+
+		assertFalse(tt.probe(0, entry).hit());
+
+		tt.write(board.getIncrementalHashKey(), TranspositionTable.NODETYPE_EXACT, 12, 2, null, 0);
+		assertNull(tt.probe(board.getIncrementalHashKey(), entry).getMove());
+		assertEquals(12, tt.probe(board.getIncrementalHashKey(), entry).getDepth());
+		assertEquals(2, tt.probe(board.getIncrementalHashKey(), entry).getEvaluation());
+		assertTrue(tt.probe(board.getIncrementalHashKey(), entry).verifySignature(board.getIncrementalHashKey()));
 
-		assertFalse(tt.probe(0).hit());
-
-		tt.write(null, board.getIncrementalHashKey(), TranspositionTable.NODETYPE_EXACT, 12, 2, null, 0);
-		assertNull(tt.probe(board.getIncrementalHashKey()).getMove());
-		assertEquals(12, tt.probe(board.getIncrementalHashKey()).getDepth());
-		assertEquals(2, tt.probe(board.getIncrementalHashKey()).getEvaluation());
-		assertTrue(tt.probe(board.getIncrementalHashKey()).verifySignature(board.getIncrementalHashKey()));
-
-		tt.write(null, board.getIncrementalHashKey(), TranspositionTable.NODETYPE_NONE, TranspositionTable.DEPTH_QS,
-				-6900, new Move(Square.E2, Square.E4), -200);
-		assertEquals(new Move(Square.E2, Square.E4), tt.probe(board.getIncrementalHashKey()).getMove());
-		assertEquals(TranspositionTable.NODETYPE_NONE, tt.probe(board.getIncrementalHashKey()).getNodeType());
-		assertEquals(TranspositionTable.DEPTH_QS, tt.probe(board.getIncrementalHashKey()).getDepth());
-		assertEquals(-6900, tt.probe(board.getIncrementalHashKey()).getEvaluation());
-		assertEquals(-200, tt.probe(board.getIncrementalHashKey()).getStaticEval());
-		assertTrue(tt.probe(board.getIncrementalHashKey()).getMove().equals(new Move(Square.E2, Square.E4)));
-		assertTrue(tt.probe(board.getIncrementalHashKey()).verifySignature(board.getIncrementalHashKey()));
-
-		tt.write(null, board.getIncrementalHashKey(), TranspositionTable.NODETYPE_NONE, TranspositionTable.DEPTH_QS,
-				-6900, new Move(Square.A7, Square.A8, PieceType.KNIGHT), -200);
+		tt.clear(1);
+
+		tt.write(board.getIncrementalHashKey(), TranspositionTable.NODETYPE_NONE, TranspositionTable.DEPTH_QS, -6900,
+				new Move(Square.E2, Square.E4), -200);
+		assertEquals(new Move(Square.E2, Square.E4), tt.probe(board.getIncrementalHashKey(), entry).getMove());
+		assertEquals(TranspositionTable.NODETYPE_NONE, tt.probe(board.getIncrementalHashKey(), entry).getNodeType());
+		assertEquals(TranspositionTable.DEPTH_QS, tt.probe(board.getIncrementalHashKey(), entry).getDepth());
+		assertEquals(-6900, tt.probe(board.getIncrementalHashKey(), entry).getEvaluation());
+		assertEquals(-200, tt.probe(board.getIncrementalHashKey(), entry).getStaticEval());
+		assertTrue(tt.probe(board.getIncrementalHashKey(), entry).getMove().equals(new Move(Square.E2, Square.E4)));
+		assertTrue(tt.probe(board.getIncrementalHashKey(), entry).verifySignature(board.getIncrementalHashKey()));
+
+		tt.write(board.getIncrementalHashKey(), TranspositionTable.NODETYPE_NONE, TranspositionTable.DEPTH_QS, -6900,
+				new Move(Square.A7, Square.A8, PieceType.KNIGHT), -200);
 		assertEquals(new Move(Square.A7, Square.A8, PieceType.KNIGHT),
-				tt.probe(board.getIncrementalHashKey()).getMove());
+				tt.probe(board.getIncrementalHashKey(), entry).getMove());
+		assertEquals(-6900, tt.probe(board.getIncrementalHashKey(), entry).getEvaluation());
+		assertEquals(-200, tt.probe(board.getIncrementalHashKey(), entry).getStaticEval());
+		assertSame(tt.probe(board.getIncrementalHashKey(), entry).getMove(),
+				tt.probe(board.getIncrementalHashKey(), entry).getMove());
+	}
+
+	@Test
+	public void testReplacement()
+	{
+		TranspositionTable tt = new TranspositionTable(4);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+
+		// Same high bits, different signatures: all of these share one cluster
+		final long deep = (42L << 48) | 1;
+		final long shallow1 = (42L << 48) | 2;
+		final long shallow2 = (42L << 48) | 3;
+		final long shallow3 = (42L << 48) | 4;
+		final long shallow4 = (42L << 48) | 5;
+
+		tt.write(deep, TranspositionTable.NODETYPE_LOWERBOUND, 20, 100, null, 0);
+		tt.write(shallow1, TranspositionTable.NODETYPE_UPPERBOUND, 1, 0, null, 0);
+		tt.write(shallow2, TranspositionTable.NODETYPE_UPPERBOUND, 2, 0, null, 0);
+		tt.write(shallow3, TranspositionTable.NODETYPE_UPPERBOUND, 3, 0, null, 0);
+		tt.write(shallow4, TranspositionTable.NODETYPE_UPPERBOUND, 4, 0, null, 0);
+
+		assertTrue(tt.probe(deep, entry).hit());
+		assertEquals(20, tt.probe(deep, entry).getDepth());
+		assertFalse(tt.probe(shallow1, entry).hit());
+		assertTrue(tt.probe(shallow2, entry).hit());
+		assertTrue(tt.probe(shallow3, entry).hit());
+		assertTrue(tt.probe(shallow4, entry).hit());
+
+		tt.write(deep, TranspositionTable.NODETYPE_UPPERBOUND, TranspositionTable.DEPTH_QS, -100, null, 0);
+		assertEquals(20, tt.probe(deep, entry).getDepth());
+		assertEquals(100, tt.probe(deep, entry).getEvaluation());
+
+		for (int i = 0; i < 16; i++)
+		{
+			tt.newSearch();
+		}
+
+		tt.write(shallow2, TranspositionTable.NODETYPE_UPPERBOUND, 2, 0, null, 0);
+		tt.write(shallow3, TranspositionTable.NODETYPE_UPPERBOUND, 3, 0, null, 0);
+		tt.write(shallow4, TranspositionTable.NODETYPE_UPPERBOUND, 4, 0, null, 0);
+		tt.write(shallow1, TranspositionTable.NODETYPE_UPPERBOUND, 1, 0, null, 0);
+		assertFalse(tt.probe(deep, entry).hit());
+		assertTrue(tt.probe(shallow1, entry).hit());
+	}
+
+	@Test
+	public void testGenerationRefresh()
+	{
+		TranspositionTable tt = new TranspositionTable(4);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+
+		final long reused = (42L << 48) | 1;
+		final long stale = (42L << 48) | 2;
+
+		tt.write(reused, TranspositionTable.NODETYPE_EXACT, 10, 0, null, 0);
+		tt.write(stale, TranspositionTable.NODETYPE_EXACT, 10, 0, null, 0);
+
+		for (int i = 0; i < 16; i++)
+		{
+			tt.newSearch();
+		}
+
+		assertTrue(tt.probe(reused, entry).hit());
+
+		tt.write((42L << 48) | 3, TranspositionTable.NODETYPE_UPPERBOUND, 1, 0, null, 0);
+		tt.write((42L << 48) | 4, TranspositionTable.NODETYPE_UPPERBOUND, 1, 0, null, 0);
+		tt.write((42L << 48) | 5, TranspositionTable.NODETYPE_UPPERBOUND, 1, 0, null, 0);
+
+		assertTrue(tt.probe(reused, entry).hit());
+		assertFalse(tt.probe(stale, entry).hit());
+	}
+
+	@Test
+	public void testNonPowerOfTwoSize()
+	{
+		TranspositionTable tt = new TranspositionTable(3);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+
+		assertEquals(3, tt.getSize());
+		assertEquals(3 * 1048576 / 64 * 4, tt.getEntryCount());
+
+		for (long key : new long[] { 0, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 0x9E3779B97F4A7C15L })
+		{
+			tt.write(key, TranspositionTable.NODETYPE_EXACT, 5, 17, null, 0);
+			assertTrue(tt.probe(key, entry).hit());
+			assertEquals(17, entry.getEvaluation());
+		}
+	}
+
+	@Test
+	public void testParallelClearAndResize()
+	{
+		TranspositionTable tt = new TranspositionTable(4);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		long[] keys = new long[1000];
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = 0x9E3779B97F4A7C15L * (i + 1);
+			tt.write(keys[i], TranspositionTable.NODETYPE_EXACT, 5, i, null, 0);
+		}
+
+		tt.clear(3);
+
+		for (long key : keys)
+		{
+			assertFalse(tt.probe(key, entry).hit());
+		}
+
+		tt.resize(5, 4);
+
+		assertEquals(5, tt.getSize());
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			assertFalse(tt.probe(keys[i], entry).hit());
+			tt.write(keys[i], TranspositionTable.NODETYPE_EXACT, 5, i, null, 0);
+		}
+
+		assertTrue(tt.probe(keys[keys.length - 1], entry).hit());
+		assertEquals(keys.length - 1, entry.getEvaluation());
+	}
+
+	// Every field of a stress entry is derived from its key, so a torn read shows up
+	// as a mismatch
+	private static long stressKey(int i)
+	{
+		// Only four distinct top bytes, so every key lands in one of a few clusters
+		return ((long) (i & 3) << 56) | (((i & 255) * 0x9E3779B97F4A7C15L) & 0xFFFFFFFFFFFFL);
+	}
+
+	private static int stressDepth(long key)
+	{
+		return (int) (key >>> 12) & 63;
+	}
+
+	private static int stressEval(long key)
+	{
+		return (short) (key >>> 18);
+	}
+
+	private static Move stressMove(long key)
+	{
+		return new Move(Square.squareAt((int) (key & 63)), Square.squareAt((int) (key >>> 6 & 63) ^ 1));
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException
+	{
+		TranspositionTable tt = new TranspositionTable(1);
+		Thread[] threads = new Thread[8];
+		AtomicInteger hits = new AtomicInteger();
+		AtomicInteger failures = new AtomicInteger();
+
+		for (int t = 0; t < threads.length; t++)
+		{
+			final int seed = t;
+
+			threads[t] = new Thread(() ->
+			{
+				TranspositionTable.Entry entry = new TranspositionTable.Entry();
+
+				for (int n = 0; n < 200000; n++)
+				{
+					final long written = stressKey(n * 31 + seed * 7);
+					final long probed = stressKey(n * 17 + seed);
+
+					tt.write(written, TranspositionTable.NODETYPE_EXACT, stressDepth(written), stressEval(written),
+							stressMove(written), stressEval(~written));
+
+					if (tt.probe(probed, entry).hit())
+					{
+						hits.incrementAndGet();
+
+						if (entry.getDepth() != stressDepth(probed) || entry.getEvaluation() != stressEval(probed)
+								|| entry.getStaticEval() != stressEval(~probed)
+								|| !stressMove(probed).equals(entry.getMove())
+								|| entry.getNodeType() != TranspositionTable.NODETYPE_EXACT)
+						{
+							failures.incrementAndGet();
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+
+		assertTrue(hits.get() > 0);
+		assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void testOccupancy()
+	{
+		TranspositionTable tt = new TranspositionTable(1);
+
+		for (int i = 0; i < tt.getEntryCount() / 2; i++)
+		{
+			tt.write(0x9E3779B97F4A7C15L * (i + 1), TranspositionTable.NODETYPE_EXACT, 5, 0, null, 0);
+		}
+
+		assertTrue(tt.occupancy() > 250);
+		assertEquals(tt.occupancy(), tt.hashfull_accurate());
+
+		tt.newSearch();
+
+		assertEquals(0, tt.hashfull_accurate());
+		assertTrue(tt.occupancy() > 250);
+	}
+
+	private static void assertLoadFails(TranspositionTable tt, Path file)
+	{
+		try
+		{
+			tt.load(file);
+			fail("Loaded an invalid transposition table file");
+		}
+
+		catch (IOException e)
+		{
+		}
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException
+	{
+		TranspositionTable tt = new TranspositionTable(3);
+		TranspositionTable.Entry entry = new TranspositionTable.Entry();
+		Path file = Files.createTempFile("tt", ".bin");
+		Path invalid = Files.createTempFile("tt", ".bin");
+
+		try
+		{
+			tt.newSearch();
+			tt.write(0x9E3779B97F4A7C15L, TranspositionTable.NODETYPE_LOWERBOUND, 9, -55,
+					new Move(Square.G1, Square.F3), 31);
+			tt.save(file);
+
+			TranspositionTable loaded = new TranspositionTable(1);
+			loaded.load(file);
+
+			assertEquals(3, loaded.getSize());
+			assertTrue(loaded.probe(0x9E3779B97F4A7C15L, entry).hit());
+			assertEquals(TranspositionTable.NODETYPE_LOWERBOUND, entry.getNodeType());
+			assertEquals(9, entry.getDepth());
+			assertEquals(-55, entry.getEvaluation());
+			assertEquals(31, entry.getStaticEval());
+			assertEquals(new Move(Square.G1, Square.F3), entry.getMove());
+
+			loaded.clear(1);
+			assertFalse(loaded.probe(0x9E3779B97F4A7C15L, entry).hit());
+
+			loaded.load(file);
+			assertTrue(loaded.probe(0x9E3779B97F4A7C15L, entry).hit());
+
+			Files.write(invalid, Arrays.copyOf(Files.readAllBytes(file), 1000));
+			assertLoadFails(loaded, invalid);
+			assertTrue(loaded.probe(0x9E3779B97F4A7C15L, entry).hit());
+
+			Files.write(invalid, new byte[64]);
+			assertLoadFails(loaded, invalid);
+		}
+
+		finally
+		{
+			Files.delete(file);
+			Files.delete(invalid);
+		}
 	}
 }